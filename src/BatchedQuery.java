@@ -0,0 +1,533 @@
+package src;
+
+import java.util.*;
+
+/**
+ * BatchedQuery.java
+ * Answers the same Variable Elimination query for many cases that differ only in the values of the evidence.
+ *
+ * The query is given as a template with the names of the evidence variables and no values, e.g. P(B=T|J,M) A-E
+ * (or AUTO), and the values come in columns: one array of values per evidence variable, with one value per case.
+ * All the cases have the same plan (QueryPlan), so the pruning, the order of elimination and the shapes
+ * of all the factors are computed once. Every factor holds the tables of all the cases together:
+ * the entry of case b at position i of the table is at i * batch + b (the case is the innermost dimension),
+ * so every join and sum-out runs one short loop over the cases that the JIT can vectorise.
+ *
+ * The factors are joined and summed out in the same order as VariableElimination,
+ * so the probability of every case is exactly the one processVariableEliminationQuery returns for it,
+ * and the numbers of additions and multiplications (the same for all the cases) are the same too.
+ * On a network in log space (see BayesianNetwork.setLogSpace) the tables hold logarithms as in Factor:
+ * a join adds them, and summing out and normalizing use log-sum-exp.
+ */
+public class BatchedQuery {
+
+    /**
+     * The answers of a batch of cases
+     */
+    public static class Result {
+        private final double[] probabilities;
+        private final int numOfAdditions;
+        private final int numOfMultiplications;
+
+        Result(double[] probabilities, int numOfAdditions, int numOfMultiplications) {
+            this.probabilities = probabilities;
+            this.numOfAdditions = numOfAdditions;
+            this.numOfMultiplications = numOfMultiplications;
+        }
+
+        /**
+         * Getters
+         */
+        public int size() {
+            return probabilities.length;
+        }
+        public double[] getProbabilities() {
+            return probabilities;
+        }
+        public double getProbability(int b) {
+            return probabilities[b];
+        }
+        public int getNumOfAdditions() {
+            return numOfAdditions;
+        }
+        public int getNumOfMultiplications() {
+            return numOfMultiplications;
+        }
+
+        /**
+         * @param b a case
+         * @return the answer of the case in the form of processVariableEliminationQuery: probability,additions,multiplications
+         */
+        public String getAnswer(int b) {
+            return (Math.round(probabilities[b]*100000.0)/100000.0) + "," + numOfAdditions + "," + numOfMultiplications;
+        }
+    }
+
+    /**
+     * A factor of all the cases of a batch: the variables are the same for all of them,
+     * and the tables are interleaved with the case as the innermost dimension
+     */
+    private static class BatchedFactor {
+        final Variable[] variables;
+        final int[] cardinalities;
+        final int[] strides;
+        // the number of entries of the table of one case
+        final int size;
+        // the tables of all the cases: entry i of case b is at i * batch + b
+        final double[] values;
+        // true if the tables hold the natural logarithms of the values
+        final boolean logSpace;
+
+        BatchedFactor(Variable[] variables, int batch, boolean logSpace) {
+            this.variables = variables;
+            this.logSpace = logSpace;
+            this.cardinalities = new int[variables.length];
+            this.strides = new int[variables.length];
+            int stride = 1;
+            for (int i = variables.length - 1; i >= 0; i--) {
+                cardinalities[i] = variables[i].getOutcomes().size();
+                strides[i] = stride;
+                stride *= cardinalities[i];
+            }
+            this.size = stride;
+            this.values = new double[size * batch];
+        }
+
+        int indexOf(Variable v) {
+            for (int i = 0; i < variables.length; i++) {
+                if (variables[i] == v) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the strides of the given variables in this table (0 for a variable the factor does not contain)
+         */
+        int[] stridesOf(Variable[] vars) {
+            int[] result = new int[vars.length];
+            for (int i = 0; i < vars.length; i++) {
+                int pos = indexOf(vars[i]);
+                result[i] = pos < 0 ? 0 : strides[pos];
+            }
+            return result;
+        }
+
+        /**
+         * @return the sum of the characters of the names of the variables (for the order of the factors)
+         */
+        int asciiSum() {
+            int sum = 0;
+            for (Variable v : variables) {
+                for (char c : v.getName().toCharArray()) {
+                    sum += c;
+                }
+            }
+            return sum;
+        }
+    }
+
+    // the same order as FactorComperator: by size, and a tie puts the first factor after the second
+    private static final Comparator<BatchedFactor> BY_SIZE = (f1, f2) -> {
+        if (f1.size != f2.size) {
+            return f1.size > f2.size ? 1 : -1;
+        }
+        return Integer.compare(f1.asciiSum() + f2.asciiSum(), 0);
+    };
+
+    /**
+     * Answer a query for a batch of cases
+     * @param bn the Bayesian Network
+     * @param template the query with the names of the evidence variables only: P(Q=q|E1,E2,...,Ek) H1-H2-...-Hj (or AUTO)
+     * @param evidence the values of every evidence variable of the template, one value per case
+     * @return the probability of the query for every case
+     */
+    public static Result evaluate(BayesianNetwork bn, String template, Map<String, String[]> evidence) {
+        // parse the template like VariableElimination parses a query
+        String[] queryParts = template.split("\\|");
+        String queryVarString = queryParts[0].substring(2);
+        String[] evidenceAndHidden = queryParts[1].split("\\)");
+        String evidenceString = evidenceAndHidden.length > 0 ? evidenceAndHidden[0] : "";
+        String hiddenString = evidenceAndHidden.length > 1 ? evidenceAndHidden[1] : null;
+        String varName = queryVarString.split("=")[0];
+
+        // the evidence variables of the template, and the number of cases
+        List<String> names = new ArrayList<>();
+        for (String name : evidenceString.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.split("=")[0].trim());
+            }
+        }
+        int batch = -1;
+        for (String name : names) {
+            String[] column = evidence.get(name);
+            if (column == null) {
+                throw new IllegalArgumentException("No values for the evidence variable " + name);
+            }
+            if (batch >= 0 && column.length != batch) {
+                throw new IllegalArgumentException("The evidence variable " + name + " has " + column.length + " values, expected " + batch);
+            }
+            batch = column.length;
+        }
+        if (batch == 0) {
+            return new Result(new double[0], 0, 0);
+        }
+        if (batch < 0) {
+            // no evidence: a batch of one case
+            batch = 1;
+        }
+
+        // the plan depends only on the names of the evidence variables, so the first case can compile it
+        HashMap<String, String> first = new HashMap<>();
+        for (String name : names) {
+            first.put(name, evidence.get(name)[0]);
+        }
+        QueryPlanCache cache = bn.getPlanCache();
+        String planKey = QueryPlan.key(varName, first.keySet(), hiddenString);
+        QueryPlan plan = cache.get(planKey);
+        if (plan == null) {
+            plan = QueryPlan.compile(bn, bn.getVariable(varName), first, hiddenString);
+            cache.put(planKey, plan);
+        }
+        long maxBatchedSize = plan.getMaxFactorSize() > bn.getMaxFactorSize() / batch ? Long.MAX_VALUE : plan.getMaxFactorSize() * batch;
+        if (maxBatchedSize > bn.getMaxFactorSize()) {
+            throw new FactorTooLargeException("The query " + template.trim() + " for " + batch + " cases needs a factor that is too large",
+                    maxBatchedSize, bn.getMaxFactorSize());
+        }
+
+        // the outcome index of every evidence variable in every case
+        Map<Variable, int[]> outcomes = new HashMap<>();
+        for (String name : names) {
+            Variable v = bn.getVariable(name);
+            String[] column = evidence.get(name);
+            int[] indices = new int[batch];
+            for (int b = 0; b < batch; b++) {
+                indices[b] = v.getOutcomeIndex(column[b]);
+                if (indices[b] < 0) {
+                    throw new IllegalArgumentException("Variable " + name + " has no outcome " + column[b]);
+                }
+            }
+            outcomes.put(v, indices);
+        }
+
+        // the factors of all the cases
+        List<BatchedFactor> factors = new ArrayList<>();
+        for (Variable v : plan.getFactorVars()) {
+            factors.add(createFactor(v, outcomes, batch, bn.isLogSpace()));
+        }
+
+        int[] counts = new int[2]; // the additions and the multiplications
+        Variable queryVar = plan.getQueryVar();
+        if (factors.size() == 1) {
+            // a single factor: the value of the query outcome without normalizing (as VariableElimination)
+            BatchedFactor f = factors.get(0);
+            double[] probabilities = new double[batch];
+            int row = queryRow(f, queryVarString);
+            for (int b = 0; b < batch; b++) {
+                probabilities[b] = row < 0 ? 0.0 : (float) valueOf(f, row * batch + b);
+            }
+            return new Result(probabilities, counts[0], counts[1]);
+        }
+
+        // eliminate the hidden variables
+        for (Variable h : plan.getSchedule()) {
+            factors = eliminateVariable(factors, h, batch, counts);
+        }
+
+        // join the remaining factors and normalize the result of every case
+        BatchedFactor last = joinFactors(factors, batch, counts);
+        double[] probabilities = new double[batch];
+        if (last != null) {
+            normalize(last, batch);
+            counts[0] += last.size - 1;
+            int row = queryRow(last, queryVarString);
+            for (int b = 0; b < batch; b++) {
+                probabilities[b] = row < 0 ? 0.0 : valueOf(last, row * batch + b);
+            }
+        }
+        return new Result(probabilities, counts[0], counts[1]);
+    }
+
+    /**
+     * Create the factor of a variable for all the cases: its CPT restricted to the evidence of every case
+     * @param v the variable
+     * @param outcomes the outcome index of every evidence variable in every case
+     * @param batch the number of cases
+     * @param logSpace true to keep the logarithms of the probabilities
+     * @return the factor, over the variables of the CPT that are not evidence
+     */
+    private static BatchedFactor createFactor(Variable v, Map<Variable, int[]> outcomes, int batch, boolean logSpace) {
+        CPT cpt = v.getProbabilityTable();
+        List<Variable> parents = cpt.getParents();
+        Variable[] cptVars = new Variable[parents.size() + 1];
+        for (int i = 0; i < parents.size(); i++) {
+            cptVars[i] = parents.get(i);
+        }
+        cptVars[parents.size()] = v;
+
+        // the strides of the table of the CPT (the variable itself is the fastest)
+        int[] cptStrides = new int[cptVars.length];
+        int stride = 1;
+        for (int i = cptVars.length - 1; i >= 0; i--) {
+            cptStrides[i] = stride;
+            stride *= cptVars[i].getOutcomes().size();
+        }
+
+        // the start of the rows of every case, and the variables that stay in the factor
+        int[] base = new int[batch];
+        List<Variable> kept = new ArrayList<>();
+        List<Integer> keptStrides = new ArrayList<>();
+        for (int i = 0; i < cptVars.length; i++) {
+            int[] indices = outcomes.get(cptVars[i]);
+            if (indices == null) {
+                kept.add(cptVars[i]);
+                keptStrides.add(cptStrides[i]);
+                continue;
+            }
+            for (int b = 0; b < batch; b++) {
+                base[b] += indices[b] * cptStrides[i];
+            }
+        }
+
+        // copy the rows of every case, walking the entries of the factor like an odometer
+        BatchedFactor f = new BatchedFactor(kept.toArray(new Variable[0]), batch, logSpace);
+        double[] table = cpt.getProbabilities();
+        int n = f.variables.length;
+        int[] assignment = new int[n];
+        int offset = 0;
+        for (int i = 0; i < f.size; i++) {
+            int to = i * batch;
+            for (int b = 0; b < batch; b++) {
+                double value = table[base[b] + offset];
+                f.values[to + b] = logSpace ? Math.log(value) : value;
+            }
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < f.cardinalities[k]) {
+                    offset += keptStrides.get(k);
+                    break;
+                }
+                assignment[k] = 0;
+                offset -= (f.cardinalities[k] - 1) * keptStrides.get(k);
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Eliminate a variable from a list of factors, in the same way as VariableElimination.eliminateVariable
+     * @param counts the additions and multiplications so far
+     */
+    private static List<BatchedFactor> eliminateVariable(List<BatchedFactor> factors, Variable hidden, int batch, int[] counts) {
+        List<BatchedFactor> newFactors = new ArrayList<>();
+        List<BatchedFactor> toMultiply = new ArrayList<>();
+        for (BatchedFactor f : factors) {
+            if (f.indexOf(hidden) >= 0) {
+                toMultiply.add(f);
+            } else {
+                newFactors.add(f);
+            }
+        }
+        BatchedFactor product = joinFactors(toMultiply, batch, counts);
+        if (product != null) {
+            BatchedFactor summed = sumOut(product, hidden, batch);
+            counts[0] += product.size - summed.size;
+            if (summed.size > 1) newFactors.add(summed);
+        }
+        return newFactors;
+    }
+
+    /**
+     * Join a list of factors, in the same order as VariableElimination.joinFactors
+     * @param counts the additions and multiplications so far
+     * @return the product of the factors (the list is left with the product only), or null if the list is empty
+     */
+    private static BatchedFactor joinFactors(List<BatchedFactor> factors, int batch, int[] counts) {
+        if (factors.isEmpty()) return null;
+        factors.sort(BY_SIZE);
+        BatchedFactor result = factors.get(0);
+        while (factors.size() > 1) {
+            BatchedFactor f1 = factors.remove(0);
+            BatchedFactor f2 = factors.remove(0);
+            result = join(f1, f2, batch);
+            insert(factors, result);
+            counts[1] += result.size;
+        }
+        return result;
+    }
+
+    /**
+     * Insert a factor into a list of factors by its size, as VariableElimination.insert
+     */
+    private static void insert(List<BatchedFactor> factors, BatchedFactor f) {
+        if (factors.isEmpty()) {
+            factors.add(f);
+            return;
+        }
+        for (int i = 0; i < factors.size(); i++) {
+            if (factors.get(i).size >= f.size) {
+                factors.add(i, f);
+                return;
+            }
+        }
+        factors.add(factors.size() - 1, f);
+    }
+
+    /**
+     * Join two factors of all the cases (see Factor.join)
+     */
+    private static BatchedFactor join(BatchedFactor f1, BatchedFactor f2, int batch) {
+        List<Variable> newVars = new ArrayList<>(Arrays.asList(f1.variables));
+        for (Variable v : f2.variables) {
+            if (f1.indexOf(v) < 0) {
+                newVars.add(v);
+            }
+        }
+        BatchedFactor result = new BatchedFactor(newVars.toArray(new Variable[0]), batch, f1.logSpace);
+
+        int n = result.variables.length;
+        int[] strides1 = f1.stridesOf(result.variables);
+        int[] strides2 = f2.stridesOf(result.variables);
+        int[] cards = result.cardinalities;
+        int[] assignment = new int[n];
+        double[] values1 = f1.values;
+        double[] values2 = f2.values;
+        double[] newValues = result.values;
+        int pos1 = 0;
+        int pos2 = 0;
+        for (int i = 0; i < result.size; i++) {
+            // the product of the matching rows, for all the cases (in log space the sum of the logarithms)
+            int to = i * batch;
+            int from1 = pos1 * batch;
+            int from2 = pos2 * batch;
+            if (result.logSpace) {
+                for (int b = 0; b < batch; b++) {
+                    newValues[to + b] = values1[from1 + b] + values2[from2 + b];
+                }
+            } else {
+                for (int b = 0; b < batch; b++) {
+                    newValues[to + b] = values1[from1 + b] * values2[from2 + b];
+                }
+            }
+
+            // advance the odometer
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < cards[k]) {
+                    pos1 += strides1[k];
+                    pos2 += strides2[k];
+                    break;
+                }
+                assignment[k] = 0;
+                pos1 -= (cards[k] - 1) * strides1[k];
+                pos2 -= (cards[k] - 1) * strides2[k];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sum a variable out of a factor of all the cases (see Factor.EliminateVariable)
+     */
+    private static BatchedFactor sumOut(BatchedFactor f, Variable hidden, int batch) {
+        int pos = f.indexOf(hidden);
+        Variable[] newVars = new Variable[f.variables.length - 1];
+        for (int i = 0, j = 0; i < f.variables.length; i++) {
+            if (i != pos) {
+                newVars[j++] = f.variables[i];
+            }
+        }
+        BatchedFactor result = new BatchedFactor(newVars, batch, f.logSpace);
+
+        int n = newVars.length;
+        int[] oldStrides = f.stridesOf(newVars);
+        int hiddenStride = f.strides[pos];
+        int hiddenCard = f.cardinalities[pos];
+        int[] assignment = new int[n];
+        double[] values = f.values;
+        double[] newValues = result.values;
+        int from = 0;
+        for (int i = 0; i < result.size; i++) {
+            // the sum over the outcomes of the hidden variable, for all the cases
+            int to = i * batch;
+            int start = from * batch;
+            if (f.logSpace) {
+                for (int b = 0; b < batch; b++) {
+                    newValues[to + b] = Factor.logSumExp(values, start + b, hiddenStride * batch, hiddenCard);
+                }
+            } else {
+                for (int b = 0; b < batch; b++) {
+                    newValues[to + b] = values[start + b];
+                }
+                for (int h = 1; h < hiddenCard; h++) {
+                    int next = (from + h * hiddenStride) * batch;
+                    for (int b = 0; b < batch; b++) {
+                        newValues[to + b] += values[next + b];
+                    }
+                }
+            }
+
+            // advance the odometer
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < result.cardinalities[k]) {
+                    from += oldStrides[k];
+                    break;
+                }
+                assignment[k] = 0;
+                from -= (result.cardinalities[k] - 1) * oldStrides[k];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Normalize the table of every case
+     */
+    private static void normalize(BatchedFactor f, int batch) {
+        if (f.logSpace) {
+            // subtract the logarithm of the sum of every case from its logarithms
+            for (int b = 0; b < batch; b++) {
+                double logSum = Factor.logSumExp(f.values, b, batch, f.size);
+                for (int i = 0; i < f.size; i++) {
+                    f.values[i * batch + b] -= logSum;
+                }
+            }
+            return;
+        }
+        double[] sums = new double[batch];
+        for (int i = 0; i < f.size; i++) {
+            int from = i * batch;
+            for (int b = 0; b < batch; b++) {
+                sums[b] += f.values[from + b];
+            }
+        }
+        for (int i = 0; i < f.size; i++) {
+            int from = i * batch;
+            for (int b = 0; b < batch; b++) {
+                f.values[from + b] /= sums[b];
+            }
+        }
+    }
+
+    /**
+     * @param f a factor
+     * @param at a position in the tables of the factor
+     * @return the value at the position (not its logarithm, also in log space)
+     */
+    private static double valueOf(BatchedFactor f, int at) {
+        return f.logSpace ? Math.exp(f.values[at]) : f.values[at];
+    }
+
+    /**
+     * @param f a factor
+     * @param outcome a string of the form "Var=value"
+     * @return the position of the first row in which the variable has the outcome (as Factor.getProbability), or -1
+     */
+    private static int queryRow(BatchedFactor f, String outcome) {
+        String[] parts = outcome.split("=");
+        for (int i = 0; i < f.variables.length; i++) {
+            if (f.variables[i].getName().equals(parts[0])) {
+                int index = f.variables[i].getOutcomeIndex(parts[1]);
+                return index < 0 ? -1 : index * f.strides[i];
+            }
+        }
+        return -1;
+    }
+}
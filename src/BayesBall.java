@@ -27,12 +27,7 @@ public class BayesBall {
         String var2 = variables[1];
 
         // check if the variables are independent with respect to the evidence
-        boolean ans =  areIndependent(network, var1, var2, evidence);
-
-        // reset the evidence so the next query can be processed
-        resetEvidence(network);
-
-        return ans;
+        return areIndependent(network, var1, var2, evidence);
     }
 
     /**
@@ -50,107 +45,108 @@ public class BayesBall {
         Variable v1 = network.getVariable(var1);
         Variable v2 = network.getVariable(var2);
 
-
-        // a set the variables that belong to the evidence as marked
-        setEvidence(network, evidence);
-
-        // Perform DFS to check reachability
-        boolean search = search(v1, v2, null);
-        resetEvidence(network);
-        return !search;
+        // check if the ball can reach the second variable from the first one
+        return !reachable(network, v1, evidence).get(v2.getId());
     }
 
     /**
-     * This method performs a Depth First Search to check if two variables are independent
-     * it utilizes the BayesBall algorithm and reachability rules as learned in class
+     * This method finds all the variables the ball can reach from a source variable given the evidence
+     * it is an iterative version of the Bayes Ball algorithm (the reachable-set algorithm)
+     * that visits every variable at most twice: once coming from a child and once coming from a parent,
+     * so it runs in O(V+E) and one traversal answers the question for every other variable.
      *
-     * Say we reach a node X (called current) from a node Y (called comingFrom)
-     * we divide into 4 cases:
+     * Say we reach a node X from a child (the ball moves up) or from a parent (the ball moves down):
      * 1. If X is NOT evidence, and we came from a parent
      *     - we can go to any child of X
      * 2. If X is NOT evidence, and we came from a child
      *    - we can go to any parent of X
-     *    - we can go to any child of X (including the one we came from)
-     * 3. If X is evidence, and we came from a parent
-     *   - we can go to any parent of X (including the one we came from)
+     *    - we can go to any child of X
+     * 3. If X is evidence or has an evidence descendant, and we came from a parent
+     *   - we can go to any parent of X (a v-structure that the evidence opens)
      * 4. If X is evidence, and we came from a child
-     *   - we cannot go to any parent or child of X (including the one we came from)
+     *   - we cannot go to any parent or child of X
+     * From the source we can go to any parent or child.
      *
+     * The variables that are not evidence in the result are the ones d-connected to the source.
+     * An evidence variable is in the result if the ball reaches it (its CPT depends on the source).
      *
-     * To avoid infinite loops, we mark the variables as observed when we visit them
-     * if we reach a variable that has been observed twice, we return false
-     *
-     * @param current the current variable
-     * @param end the end variable we are trying to reach
-     * @param comingFrom the variable that we came from (parent or child)
-     * @return true if the variables are reachable, false otherwise
+     * @param network the Bayesian Network
+     * @param source the variable the ball starts from
+     * @param evidence the evidence variables (only the names are used)
+     * @return a bit set of the ids of the variables the ball reaches (including the source)
      */
-    private static boolean search(Variable current, Variable end, Variable comingFrom) {
-
-        // Base Case: if we reach the end variable return true
-        if (current == end) {
-            return true;
+    public static BitSet reachable(BayesianNetwork network, Variable source, Map<String, String> evidence) {
+        BitSet isEvidence = new BitSet();
+        for (String varName : evidence.keySet()) {
+            isEvidence.set(network.getVariable(varName).getId());
         }
 
-        // if we have already observed this variable twice, return false
-        if(current.Observed()==2){
-            return false;
+        // Phase 1: find the evidence variables and their ancestors, they are the ones that open a v-structure
+        BitSet opensVStructure = new BitSet();
+        ArrayDeque<Variable> toVisit = new ArrayDeque<>();
+        for (String varName : evidence.keySet()) {
+            toVisit.push(network.getVariable(varName));
         }
-
-        // mark the variable as observed
-        current.setObserved(current.Observed()+1);
-
-        // if this is the first variable we are visiting, we can go to any parent or child
-        if(comingFrom==null){
-            for (Variable parent : current.getParents()) {
-                if (search(parent, end, current)) {
-                    return true;
-                }
-            }
-            for (Variable child : current.getChildren()) {
-                if (search(child, end, current)) {
-                    return true;
-                }
+        while (!toVisit.isEmpty()) {
+            Variable v = toVisit.pop();
+            if (opensVStructure.get(v.getId())) continue;
+            opensVStructure.set(v.getId());
+            for (Variable parent : v.getParents()) {
+                toVisit.push(parent);
             }
-            return false;
         }
 
-        // Breakdown into 4 cases:
-        //
-        // if current is NOT evidence
-        if (!current.isEvidence()) {
-            // Case 1:  if we came from a parent (current is NOT evidence)
-            if(current.getParents().contains(comingFrom)) {
-                for (Variable child : current.getChildren()) {
-                    if (search(child, end, current)) {
-                        return true;
-                    }
+        // Phase 2: move the ball. we keep separate lists and marks for the two directions
+        BitSet reached = new BitSet();
+        BitSet visitedUp = new BitSet();   // reached from a child
+        BitSet visitedDown = new BitSet(); // reached from a parent
+        ArrayDeque<Variable> up = new ArrayDeque<>();
+        ArrayDeque<Variable> down = new ArrayDeque<>();
+
+        // from the source we can go to any parent or child
+        reached.set(source.getId());
+        visitedUp.set(source.getId());
+        visitedDown.set(source.getId());
+        pushAll(source.getParents(), up, visitedUp);
+        pushAll(source.getChildren(), down, visitedDown);
+
+        while (!up.isEmpty() || !down.isEmpty()) {
+            if (!up.isEmpty()) {
+                // we came to this variable from a child
+                Variable current = up.pop();
+                reached.set(current.getId());
+                if (!isEvidence.get(current.getId())) {
+                    pushAll(current.getParents(), up, visitedUp);
+                    pushAll(current.getChildren(), down, visitedDown);
                 }
-                //  Case 2: if we came from a child (current is NOT evidence)
             } else {
-                for (Variable parent : current.getParents()) {
-                    if (search(parent, end, current)) {
-                        return true;
-                    }
+                // we came to this variable from a parent
+                Variable current = down.pop();
+                reached.set(current.getId());
+                if (!isEvidence.get(current.getId())) {
+                    pushAll(current.getChildren(), down, visitedDown);
                 }
-                for (Variable child : current.getChildren()) {
-                    if (search(child, end, current)) {
-                        return true;
-                    }
+                if (opensVStructure.get(current.getId())) {
+                    pushAll(current.getParents(), up, visitedUp);
                 }
             }
-        } else { // if X is evidence
-            if(current.getParents().contains(comingFrom)) { // if we came from a parent
-                for (Variable parent : current.getParents()) {
-                    if (search(parent, end, current)) {
-                        return true;
-                    }
-                }
-            }else { // if we came from a child
-                return false;
+        }
+        return reached;
+    }
+
+    /**
+     * Add the variables that were not visited yet in this direction to the list of the direction
+     * @param vars the variables
+     * @param list the list of variables to visit in this direction
+     * @param visited the variables that were visited in this direction
+     */
+    private static void pushAll(List<Variable> vars, ArrayDeque<Variable> list, BitSet visited) {
+        for (Variable v : vars) {
+            if (!visited.get(v.getId())) {
+                visited.set(v.getId());
+                list.push(v);
             }
         }
-        return false;
     }
 
     /**
@@ -169,28 +165,4 @@ public class BayesBall {
         }
         return evidence;
     }
-
-    /**
-     * This method sets the evidence variables in the network
-     * @param network the Bayesian Network
-     * @param evidence a hash map of the evidence variables name (String) and their values (String)
-     */
-    private static void setEvidence(BayesianNetwork network, HashMap<String, String> evidence) {
-        for (Map.Entry<String, String> entry : evidence.entrySet()) {
-            String varName = entry.getKey();
-            Variable v = network.getVariable(varName);
-            v.setEvidence(true);
-        }
-    }
-
-    /**
-     * This method resets the variables in the network to not be evidence
-     * @param network the Bayesian Network
-     */
-    private static void resetEvidence(BayesianNetwork network) {
-        for (Variable v : network.getVariables().values()) {
-            v.setEvidence(false);
-            v.setObserved(0);
-        }
-    }
 }
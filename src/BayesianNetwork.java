@@ -1,6 +1,9 @@
 package src;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * BayesianNetwork.java
@@ -13,11 +16,27 @@ public class BayesianNetwork {
     // A list of variables in the network
     public HashMap<String, Variable> variables;
 
+    // The compiled Variable Elimination queries of this network
+    private final QueryPlanCache planCache;
+
+    // The largest number of entries a factor of a Variable Elimination query may have
+    private volatile long maxFactorSize = Factor.MAX_TABLE_SIZE;
+
+    // true if the Variable Elimination queries compute with the logarithms of the probabilities
+    private volatile boolean logSpace;
+
+    // The junction tree of the network (compiled when it is first needed)
+    private JunctionTree junctionTree;
+
+    // The variables in topological order (computed when it is first needed)
+    private List<Variable> topologicalOrder;
+
     /**
      * Constructor
      */
     public BayesianNetwork() {
         variables = new HashMap<String, Variable>();
+        planCache = new QueryPlanCache(QueryPlanCache.DEFAULT_CAPACITY);
     }
 
     /**
@@ -29,11 +48,117 @@ public class BayesianNetwork {
     }
 
     /**
-     * This method adds a variable to the network
+     * This method returns the cache of compiled Variable Elimination queries of the network
+     * @return the plan cache
+     */
+    public QueryPlanCache getPlanCache() {
+        return planCache;
+    }
+
+    /**
+     * This method returns the largest number of entries a factor of a Variable Elimination query may have
+     * @return the budget of the size of a factor
+     */
+    public long getMaxFactorSize() {
+        return maxFactorSize;
+    }
+
+    /**
+     * This method sets the largest number of entries a factor of a Variable Elimination query may have.
+     * A query whose plan predicts a larger factor fails with a FactorTooLargeException before it allocates anything
+     * @param maxFactorSize the budget of the size of a factor (at most Factor.MAX_TABLE_SIZE)
+     */
+    public void setMaxFactorSize(long maxFactorSize) {
+        if (maxFactorSize < 1) {
+            throw new IllegalArgumentException("The budget of the size of a factor must be positive: " + maxFactorSize);
+        }
+        this.maxFactorSize = Math.min(maxFactorSize, Factor.MAX_TABLE_SIZE);
+    }
+
+    /**
+     * This method returns true if the Variable Elimination queries compute with the logarithms of the probabilities
+     * @return true in log space
+     */
+    public boolean isLogSpace() {
+        return logSpace;
+    }
+
+    /**
+     * This method sets whether the Variable Elimination queries compute with the logarithms of the probabilities.
+     * In log space long products of small probabilities do not underflow to 0 (see Factor.toLogSpace)
+     * @param logSpace true to compute in log space
+     */
+    public void setLogSpace(boolean logSpace) {
+        this.logSpace = logSpace;
+    }
+
+    /**
+     * This method returns the junction tree of the network, and compiles it the first time it is needed
+     * @return the junction tree
+     */
+    public synchronized JunctionTree getJunctionTree() {
+        if (junctionTree == null) {
+            junctionTree = new JunctionTree(this);
+        }
+        return junctionTree;
+    }
+
+    /**
+     * This method returns the variables of the network in topological order: every variable comes after its parents.
+     * among the variables that are ready at the same time, the one with the smaller id comes first
+     * @return the variables in topological order
+     */
+    public synchronized List<Variable> getTopologicalOrder() {
+        if (topologicalOrder == null) {
+            Variable[] byId = new Variable[size()];
+            int[] missingParents = new int[size()];
+            for (Variable v : variables.values()) {
+                byId[v.getId()] = v;
+                missingParents[v.getId()] = v.getParents().size();
+            }
+            // the variables whose parents are all in the order, by their ids
+            PriorityQueue<Integer> ready = new PriorityQueue<>();
+            for (int id = 0; id < byId.length; id++) {
+                if (missingParents[id] == 0) ready.add(id);
+            }
+            List<Variable> order = new ArrayList<>();
+            while (!ready.isEmpty()) {
+                Variable v = byId[ready.poll()];
+                order.add(v);
+                for (Variable child : v.getChildren()) {
+                    if (--missingParents[child.getId()] == 0) ready.add(child.getId());
+                }
+            }
+            if (order.size() != byId.length) {
+                throw new RuntimeException("The network has a cycle");
+            }
+            topologicalOrder = order;
+        }
+        return topologicalOrder;
+    }
+
+    /**
+     * This method adds a variable to the network and gives it the next free id
+     * (the compiled queries and junction tree are dropped, since they may no longer be valid)
      * @param v the variable to add
      */
     public void addVariable(Variable v) {
-        variables.put(v.getName(), v);
+        Variable old = variables.put(v.getName(), v);
+        v.setId(old != null ? old.getId() : variables.size() - 1);
+        planCache.clear();
+        synchronized (this) {
+            junctionTree = null;
+            topologicalOrder = null;
+        }
+    }
+
+    /**
+     * This method returns the number of variables in the network
+     * the ids of the variables are 0 ... size()-1
+     * @return the number of variables
+     */
+    public int size() {
+        return variables.size();
     }
 
     /**
@@ -5,107 +5,109 @@ import java.util.*;
 /**
  *  conditional probability table
  *
+ *  The table is stored as a flat array in the order of the XML file:
+ *  the parents in order from the slowest changing to the fastest, and the variable itself changes fastest.
+ *  The position of a row is a mixed-radix number: the digits are the outcome indices of the parents and the variable,
+ *  and the radix of every digit is the number of outcomes of its variable.
  */
 
 public class CPT {
-    private final Map<List<String>,Double> table;
     private final Variable v;
+    // the parents of the variable, in the order they appear in the table
+    private final List<Variable> parents;
+    // the probabilities in the order they appear in the XML file (the variable itself changes fastest)
+    private final double[] probabilities;
+    // how far to move in the table when the outcome index of each parent grows by one
+    private final int[] parentStrides;
 
     public CPT(Variable v, ArrayList<Variable> parents, double[] probabilities) {
         this.v = v;
-        table = new HashMap<List<String>,Double>();
-        setCPTable(parents, probabilities);
-//        printCPT();
-    }
-
-    /**
-     * Set the conditional probability table for the variable
-     * given the outcomes of its parents
-     *
-     * @param parents list of parent variables
-     * @param probabilities probabilities of the variable given the outcomes of its parents
-     */
-
-    public void setCPTable(ArrayList<Variable> parents, double[] probabilities) {
-        List<List<String>> outcomesList = new ArrayList<>();
-
-        // creating the 2D list of outcomes per parent
-        if(!parents.isEmpty()) {
-            for (Variable parent : parents) {
-                List<String> outcomes = new ArrayList<>();
-                if (parent == null) {
-                    System.out.println("Variable: " + v.getName() + " has a parent that is null.");
-                }
-                for (String outcome : parent.getOutcomes()) {
-                    outcomes.add(parent.getName() + "=" + outcome);
-                }
-                outcomesList.add(outcomes);
+        this.parents = new ArrayList<Variable>(parents);
+
+        // the strides of the parents: the variable itself has stride 1
+        this.parentStrides = new int[parents.size()];
+        int size = v.getOutcomes().size();
+        for (int i = parents.size() - 1; i >= 0; i--) {
+            if (parents.get(i) == null) {
+                throw new IllegalArgumentException("Variable: " + v.getName() + " has a parent that is null.");
             }
+            parentStrides[i] = size;
+            size *= parents.get(i).getOutcomes().size();
         }
 
-        // Add the outcomes of the variable itself
-        List<String> varOutcomes = new ArrayList<>();
-        for (String outcome : v.getOutcomes()) {
-            varOutcomes.add(v.getName() + "=" + outcome);
+        // a table with extra numbers is cut to the size of the table
+        if (probabilities.length < size) {
+            throw new IllegalArgumentException("The table of " + v.getName() + " has " + probabilities.length + " entries, expected " + size);
         }
-        outcomesList.add(varOutcomes);
-
-        // Generate all combinations of outcomes
-        List<List<String>> allCombinations = generateAllCombinations(outcomesList);
-
+        this.probabilities = probabilities.length == size ? probabilities : Arrays.copyOf(probabilities, size);
+//        printCPT();
+    }
 
-        // Map combinations to probabilities
-        for (int i = 0; i < allCombinations.size(); i++) {
-            table.put(allCombinations.get(i), probabilities[i]);
+    /**
+     * Get the position in the table of the row of the variable given the outcomes of its parents
+     * the probability of outcome i of the variable is at position rowIndex(assignment) + i
+     * @param assignment the outcome index of every variable in the network, indexed by the variable id
+     * @return the position of the first entry of the row
+     */
+    public int rowIndex(int[] assignment) {
+        int index = 0;
+        for (int i = 0; i < parentStrides.length; i++) {
+            index += assignment[parents.get(i).getId()] * parentStrides[i];
         }
+        return index;
     }
 
     /**
-     * Generate all combinations of outcomes
-     * @param outcomesList list of outcomes for each parent and the variable itself
-     * @return list of all combinations of outcomes in the order to be mapped to probabilities
+     * Get the probability of the outcome of the variable given the outcomes of its parents
+     * this method does not allocate, so it can be used for sampling and likelihood computations
+     * @param assignment the outcome index of every variable in the network, indexed by the variable id
+     * @return the probability of the outcome of the variable in the assignment given the outcomes of its parents
      */
-    public static List<List<String>> generateAllCombinations(List<List<String>> outcomesList) {
-        List<List<String>> allCombinations = new ArrayList<>();
-        generateAllCombinationsHelper(outcomesList, allCombinations, 0, new ArrayList<String>());
-        return allCombinations;
+    public double getProbability(int[] assignment) {
+        return probabilities[rowIndex(assignment) + assignment[v.getId()]];
     }
+
     /**
-     * Helper function to generate all combinations of outcomes
-     * @param outcomesList list of outcomes for each parent and the variable itself
-     * @param allCombinations list of all combinations of outcomes in the order to be mapped to probabilities
-     * @param index index of the parent in the list of outcomes
-     * @param current current set of outcomes
+     * Get the probability of the variable given the outcomes of its parents
+     * @param parentOutcomes outcomes of the parents and the variable, in the form "Var=value" (in any order)
+     * @return probability of the variable given the outcomes of its parents, or 0 if an outcome is missing or unknown
      */
-    private static void generateAllCombinationsHelper(List<List<String>> outcomesList, List<List<String>> allCombinations, int index, List<String> current) {
-        if (index == outcomesList.size()) {
-            allCombinations.add(new ArrayList<>(current));
-            return;
+
+    public double getProbability(ArrayList<String> parentOutcomes) {
+        Map<String, String> outcomes = new HashMap<String, String>();
+        for (String outcome : parentOutcomes) {
+            String[] parts = outcome.split("=");
+            outcomes.put(parts[0], parts[1]);
         }
-        for (String outcome : outcomesList.get(index)) {
-            current.add(outcome);
-            generateAllCombinationsHelper(outcomesList, allCombinations, index + 1, current);
-            current.remove(outcome);
+        int index = 0;
+        for (int i = 0; i <= parents.size(); i++) {
+            Variable var = i < parents.size() ? parents.get(i) : v;
+            int stride = i < parents.size() ? parentStrides[i] : 1;
+            String value = outcomes.get(var.getName());
+            int outcomeIndex = value == null ? -1 : var.getOutcomeIndex(value);
+            if (outcomeIndex < 0) {
+                return 0.0;
+            }
+            index += outcomeIndex * stride;
         }
+        return probabilities[index];
     }
 
     /**
-     * Get the probability of the variable given the outcomes of its parents
-     * @param parentOutcomes outcomes of the parents
-     * @return probability of the variable given the outcomes of its parents
+     * Get the parents of the variable in the order they appear in the table
+     * @return list of parents
      */
-
-    public double getProbability(ArrayList<String> parentOutcomes) {
-        Set<String> outcomeSet = new HashSet<String>(parentOutcomes);
-        return table.getOrDefault(outcomeSet, 0.0);
+    public List<Variable> getParents() {
+        return parents;
     }
 
     /**
-     * Get the conditional probability table in the form of a map <List of outcomes, probability>
-     * @return conditional probability table
+     * Get the probabilities as a flat array in the order of the XML table:
+     * the parents in order from the slowest changing to the fastest, and the variable itself changes fastest
+     * @return the probabilities array (shared, do not modify)
      */
-    public Map<List<String>, Double> getTable() {
-        return table;
+    public double[] getProbabilities() {
+        return probabilities;
     }
 
     /**
@@ -113,8 +115,15 @@ public class CPT {
      */
     public void printCPT() {
         System.out.println("CPT for " + v.getName());
-        for (Map.Entry<List<String>, Double> entry : table.entrySet()) {
-            System.out.println(entry.getKey() + " : " + entry.getValue());
+        int outcomes = v.getOutcomes().size();
+        for (int row = 0; row < probabilities.length; row++) {
+            List<String> key = new ArrayList<String>();
+            for (int i = 0; i < parents.size(); i++) {
+                Variable parent = parents.get(i);
+                key.add(parent.getName() + "=" + parent.getOutcomes().get((row / parentStrides[i]) % parent.getOutcomes().size()));
+            }
+            key.add(v.getName() + "=" + v.getOutcomes().get(row % outcomes));
+            System.out.println(key + " : " + probabilities[row]);
         }
     }
 
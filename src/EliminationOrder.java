@@ -0,0 +1,201 @@
+package src;
+
+import java.util.*;
+
+/**
+ * EliminationOrder.java
+ * This class computes an order of elimination for the hidden variables of a Variable Elimination query.
+ *
+ * The order is computed greedily on the moral graph of the factors of the query:
+ * every two variables that appear in the same factor are connected by an edge.
+ * At every step we pick the hidden variable with the best score (the first one in case of a tie),
+ * connect all of its neighbours (the factor we get when we join the factors of the variable) and remove it from the graph.
+ * The heuristics for the score are:
+ *  1. MIN_DEGREE - the number of neighbours of the variable
+ *  2. MIN_FILL - the number of new edges we need to add between the neighbours of the variable
+ *  3. WEIGHTED_MIN_FILL - the sum of the weights of the new edges, where the weight of an edge
+ *     is the product of the number of outcomes of its two variables
+ *
+ * Along the way we predict the size of the largest factor created during the elimination:
+ * when we eliminate a variable, the joined factor contains the variable and all of its neighbours.
+ */
+public class EliminationOrder {
+
+    /**
+     * The heuristics we can use to choose the next variable to eliminate
+     */
+    public enum Heuristic {
+        MIN_DEGREE, MIN_FILL, WEIGHTED_MIN_FILL;
+
+        /**
+         * Parse a heuristic from its name in a query (min-degree, min-fill or weighted-min-fill)
+         * @param name the name of the heuristic
+         * @return the heuristic
+         */
+        public static Heuristic parse(String name) {
+            return Heuristic.valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final List<Variable> order;
+    // the clique of every eliminated variable: the variable and its neighbours when it was eliminated
+    private final List<List<Variable>> cliques;
+    private final long maxFactorSize;
+    private final Heuristic heuristic;
+
+    private EliminationOrder(List<Variable> order, List<List<Variable>> cliques, long maxFactorSize, Heuristic heuristic) {
+        this.order = order;
+        this.cliques = cliques;
+        this.maxFactorSize = maxFactorSize;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Getters
+     */
+    public List<Variable> getOrder() {
+        return order;
+    }
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * @return for every variable in the order, the variable and its neighbours in the graph when it was eliminated
+     * (the variables of the factor we get when we join all the factors that contain it)
+     */
+    public List<List<Variable>> getCliques() {
+        return cliques;
+    }
+
+    /**
+     * @return the predicted number of entries in the largest factor created while eliminating in this order
+     */
+    public long getMaxFactorSize() {
+        return maxFactorSize;
+    }
+
+    /**
+     * Compute an elimination order for the variables of the given factors
+     * @param factors the factors of the query (after the evidence was eliminated from them)
+     * @param queryVar the query variable, which is never eliminated (null to eliminate all the variables)
+     * @param heuristic the heuristic to choose the next variable with
+     * @return the elimination order
+     */
+    public static EliminationOrder compute(List<Factor> factors, Variable queryVar, Heuristic heuristic) {
+        // build the moral graph of the factors
+        Map<Variable, Set<Variable>> graph = new LinkedHashMap<>();
+        long maxFactorSize = 0;
+        for (Factor f : factors) {
+            maxFactorSize = Math.max(maxFactorSize, f.size());
+            for (Variable v : f.getVariables()) {
+                Set<Variable> neighbours = graph.computeIfAbsent(v, k -> new LinkedHashSet<>());
+                for (Variable u : f.getVariables()) {
+                    if (u != v) neighbours.add(u);
+                }
+            }
+        }
+
+        List<Variable> hidden = new ArrayList<>(graph.keySet());
+        hidden.remove(queryVar);
+
+        // the scores of the hidden variables in a priority queue, ties are broken by the position in the list.
+        // when a variable is eliminated only the scores of the variables near it change, so we push their new scores
+        // and skip the old entries when they come out of the queue
+        Map<Variable, Integer> rank = new HashMap<>();
+        long[] scores = new long[hidden.size()];
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        for (int i = 0; i < hidden.size(); i++) {
+            rank.put(hidden.get(i), i);
+            scores[i] = score(graph, hidden.get(i), heuristic);
+            queue.add(new long[]{scores[i], i});
+        }
+        boolean[] eliminated = new boolean[hidden.size()];
+
+        // eliminate the variables one by one
+        List<Variable> order = new ArrayList<>();
+        List<List<Variable>> cliques = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int r = (int) entry[1];
+            if (eliminated[r] || entry[0] != scores[r]) continue;
+            eliminated[r] = true;
+            Variable best = hidden.get(r);
+
+            // the size of the factor we get by joining all the factors that contain the variable
+            // (Long.MAX_VALUE if it does not fit in a long, so a huge clique does not wrap around)
+            Set<Variable> neighbours = graph.remove(best);
+            List<Variable> clique = new ArrayList<>();
+            clique.add(best);
+            clique.addAll(neighbours);
+            cliques.add(clique);
+            maxFactorSize = Math.max(maxFactorSize, Factor.predictSize(clique));
+
+            // connect the neighbours of the variable to each other and remove it from the graph
+            for (Variable u : neighbours) {
+                Set<Variable> uNeighbours = graph.get(u);
+                uNeighbours.remove(best);
+                for (Variable w : neighbours) {
+                    if (w != u) uNeighbours.add(w);
+                }
+            }
+            order.add(best);
+
+            // the degree changed only for the neighbours, and the fill in also for the neighbours of the neighbours
+            Set<Variable> changed = new LinkedHashSet<>(neighbours);
+            if (heuristic != Heuristic.MIN_DEGREE) {
+                for (Variable u : neighbours) {
+                    changed.addAll(graph.get(u));
+                }
+            }
+            for (Variable u : changed) {
+                Integer ur = rank.get(u);
+                if (ur == null || eliminated[ur]) continue;
+                long score = score(graph, u, heuristic);
+                if (score != scores[ur]) {
+                    scores[ur] = score;
+                    queue.add(new long[]{score, ur});
+                }
+            }
+        }
+        return new EliminationOrder(order, cliques, maxFactorSize, heuristic);
+    }
+
+    /**
+     * Compute the score of eliminating a variable (lower is better)
+     * @param graph the current moral graph
+     * @param v the variable
+     * @param heuristic the heuristic to use
+     * @return the score
+     */
+    private static long score(Map<Variable, Set<Variable>> graph, Variable v, Heuristic heuristic) {
+        Set<Variable> neighbours = graph.get(v);
+        if (heuristic == Heuristic.MIN_DEGREE) {
+            return neighbours.size();
+        }
+        long score = 0;
+        List<Variable> list = new ArrayList<>(neighbours);
+        for (int i = 0; i < list.size(); i++) {
+            for (int j = i + 1; j < list.size(); j++) {
+                Variable u = list.get(i);
+                Variable w = list.get(j);
+                if (!graph.get(u).contains(w)) {
+                    score += heuristic == Heuristic.MIN_FILL ? 1 : (long) u.getOutcomes().size() * w.getOutcomes().size();
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * To String
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (Variable v : order) {
+            if (s.length() > 0) s.append("-");
+            s.append(v.getName());
+        }
+        return heuristic + " order: " + s + ", predicted max factor size: " + maxFactorSize;
+    }
+}
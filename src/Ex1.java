@@ -1,6 +1,12 @@
 package src;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 //TODO: account for damaged tests.inputs and bad networks
 
 /**
@@ -15,14 +21,29 @@ import java.io.*;
  *  2. P(Q=q|E1=e1, E2=e2, …, Ek=ek) H1-H2-…-Hj (Variable Elimination Query)
  *      What is the probability of Q=q given E1=e1, E2=e2, …, Ek=ek?
  *      H1, H2, …, Hj are the order of elimination of the hidden variables.
+ *      (or AUTO / AUTO:heuristic to let the planner choose the order,
+ *      or LW / GIBBS with optional :samples:seed to estimate the probability by sampling)
  * The output is written to the output file.
+ * The queries can be processed by several threads at once; the answers are still written in the order of the queries.
  */
 public class Ex1 {
 
+    // the engines that can answer the probability queries
+    public static final String ENGINE_VE = "ve";
+    public static final String ENGINE_JT = "jt";
+
     /**
      * Main method for running the Bayesian Network queries.
-     * @param args The input and output file names.
+     * @param args The input and output file names, and optionally the number of threads to process the queries with.
      * if no arguments are provided, the default input file is "input.txt" and the default output file is "output.txt".
+     * if the number of threads is not provided, the queries are processed one at a time.
+     * options can be given anywhere in the arguments:
+     *  --snapshot  load the network from a binary snapshot of the XML file (see NetworkSnapshot)
+     *  --engine=ve|jt  answer the P(...) queries with Variable Elimination (the default) or with the junction tree
+     *  --metrics=file  write the metrics of every query (see QueryMetrics) to the file, one line of JSON per query
+     *  --log-space  compute the Variable Elimination queries with the logarithms of the probabilities
+     *  --max-factor-size=n  the largest number of entries a factor of a Variable Elimination query may have.
+     *                       a query that needs a larger factor is not computed, and its answer is an error line
      *
      */
     public static void main(String[] args) {
@@ -31,23 +52,68 @@ public class Ex1 {
         String inputFile = "tests/inputs/input2.txt";
         String outputFile = "tests/outputs/Actual/outputFile.txt";
 
+        // Separate the options (arguments that start with --) from the rest of the arguments
+        List<String> positional = new ArrayList<>();
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                options.add(arg);
+            } else {
+                positional.add(arg);
+            }
+        }
+
         // Read the input and output file names from the command line arguments
-        if(args.length==1){
-            inputFile = args[0];
+        if(positional.size()==1){
+            inputFile = positional.get(0);
         }
         // Read the input and output file names from the command line arguments
-        if(args.length==2){
-            inputFile = args[0];
-            outputFile = args[1];
+        if(positional.size()>=2){
+            inputFile = positional.get(0);
+            outputFile = positional.get(1);
+        }
+        // Read the number of threads from the command line arguments
+        int threads = 1;
+        if(positional.size()==3){
+            threads = Integer.parseInt(positional.get(2));
+        }
+        // --snapshot: load the network from a binary snapshot next to the XML file (and create it if needed)
+        boolean useSnapshot = options.contains("--snapshot");
+        // --engine=jt: answer the probability queries with the junction tree of the network
+        String engine = ENGINE_VE;
+        for (String option : options) {
+            if (option.startsWith("--engine=")) {
+                engine = option.substring("--engine=".length());
+            }
+        }
+        if (!engine.equals(ENGINE_VE) && !engine.equals(ENGINE_JT)) {
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        // --metrics=file: write the metrics of every query to the file
+        String metricsFile = null;
+        for (String option : options) {
+            if (option.startsWith("--metrics=")) {
+                metricsFile = option.substring("--metrics=".length());
+            }
         }
 
         // Create a new Bayesian Network
         BayesianNetwork bn = new BayesianNetwork();
 
+        // --log-space: compute with the logarithms of the probabilities
+        bn.setLogSpace(options.contains("--log-space"));
+        // --max-factor-size=n: the budget of the size of a factor
+        for (String option : options) {
+            if (option.startsWith("--max-factor-size=")) {
+                bn.setMaxFactorSize(Long.parseLong(option.substring("--max-factor-size=".length())));
+            }
+        }
+
         // Read the input file and process the queries to write the output to the output file
         try(
             BufferedReader br = new BufferedReader(new FileReader(inputFile));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))){
+            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
+            BufferedWriter metricsWriter = metricsFile == null ? null : new BufferedWriter(new FileWriter(metricsFile))){
 
             int lineNumber =0;
 
@@ -58,7 +124,15 @@ public class Ex1 {
                 String xmlFilename = line.trim();
 
                 // Read the XML file and create the Bayesian Network
-                XmlReader.createBayesianNetwork(bn, xmlFilename);
+                if (useSnapshot) {
+                    NetworkSnapshot.loadOrCreate(bn, xmlFilename);
+                } else {
+                    XmlReader.createBayesianNetwork(bn, xmlFilename);
+                }
+            }
+            if (threads > 1) {
+                processParallel(bn, br, writer, metricsWriter, threads, engine);
+                return;
             }
             // Second line: query the Bayesian Network
             while ((line = br.readLine()) != null) {
@@ -68,14 +142,11 @@ public class Ex1 {
 
                 if(lineNumber>0) writer.newLine();
                 // Process the query
-                if (line.startsWith("P(")) {
-                    VariableElimination.processVariableEliminationQuery(bn, line, writer);
-                } else {
-                    if(BayesBall.processBayesBallQuery(bn, line)){
-                        writer.write("yes");
-                    }else{
-                        writer.write("no");
-                    }
+                QueryMetrics metrics = new QueryMetrics();
+                writer.write(processQuery(bn, line, engine, metrics));
+                if (metricsWriter != null) {
+                    metricsWriter.write(metrics.toJson());
+                    metricsWriter.newLine();
                 }
                 lineNumber++;
             }
@@ -84,4 +155,115 @@ public class Ex1 {
         }
 
     }
+
+    /**
+     * Process a single query
+     * @param bn the Bayesian Network
+     * @param line the query (a Bayes Ball query or a Variable Elimination query)
+     * @return the answer to write to the output file
+     */
+    public static String processQuery(BayesianNetwork bn, String line) {
+        return processQuery(bn, line, ENGINE_VE);
+    }
+
+    /**
+     * Process a single query
+     * @param bn the Bayesian Network
+     * @param line the query (a Bayes Ball query or a probability query)
+     * @param engine the engine to answer the probability queries with (ENGINE_VE or ENGINE_JT)
+     * @return the answer to write to the output file
+     */
+    public static String processQuery(BayesianNetwork bn, String line, String engine) {
+        return processQuery(bn, line, engine, new QueryMetrics());
+    }
+
+    /**
+     * Process a single query and measure it
+     * the Variable Elimination queries fill all the metrics, the other queries only the wall time and the allocations.
+     * a query that needs a factor larger than the budget of the network is answered with an error line
+     * instead of stopping the rest of the queries
+     * @param bn the Bayesian Network
+     * @param line the query (a Bayes Ball query or a probability query)
+     * @param engine the engine to answer the probability queries with (ENGINE_VE or ENGINE_JT)
+     * @param metrics the metrics to fill
+     * @return the answer to write to the output file
+     */
+    public static String processQuery(BayesianNetwork bn, String line, String engine, QueryMetrics metrics) {
+        if (line.startsWith("P(")
+                && !Sampling.isSampling(line.substring(line.indexOf(')') + 1))
+                && !engine.equals(ENGINE_JT)) {
+            try {
+                return VariableElimination.processVariableEliminationQuery(bn, line, metrics);
+            } catch (FactorTooLargeException e) {
+                String answer = "error: " + e.getMessage();
+                metrics.end(answer);
+                return answer;
+            }
+        }
+        metrics.begin(line);
+        String answer;
+        if (line.startsWith("P(")) {
+            // a query that ends with LW or GIBBS is answered by sampling, whatever the engine
+            if (Sampling.isSampling(line.substring(line.indexOf(')') + 1))) {
+                answer = Sampling.processSamplingQuery(bn, line);
+            } else {
+                answer = JunctionTree.processJunctionTreeQuery(bn, line);
+            }
+        } else if(BayesBall.processBayesBallQuery(bn, line)){
+            answer = "yes";
+        } else {
+            answer = "no";
+        }
+        metrics.end(answer);
+        return answer;
+    }
+
+    /**
+     * Process the rest of the queries of the input file with a pool of threads
+     * the answers are written in the order of the queries, so the output is the same as processing them one at a time.
+     * if a query fails, the answers before it are written and the exception is thrown
+     * @param bn the Bayesian Network
+     * @param br the reader of the input file, after the first line
+     * @param writer the writer of the output file
+     * @param metricsWriter the writer of the metrics of the queries, or null
+     * @param threads the number of threads
+     * @param engine the engine to answer the probability queries with
+     */
+    private static void processParallel(BayesianNetwork bn, BufferedReader br, BufferedWriter writer, BufferedWriter metricsWriter, int threads, String engine) throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // submit all the queries
+            List<Future<QueryMetrics>> answers = new ArrayList<>();
+            String line;
+            while ((line = br.readLine()) != null) {
+                String query = line.trim();
+                if (query.isEmpty()) continue;
+                answers.add(pool.submit(() -> {
+                    QueryMetrics metrics = new QueryMetrics();
+                    processQuery(bn, query, engine, metrics);
+                    return metrics;
+                }));
+            }
+
+            // write the answers in order
+            // (the new line comes before the answer is waited for, as in the loop of main, so a failing query leaves the same output)
+            for (int i = 0; i < answers.size(); i++) {
+                if (i > 0) writer.newLine();
+                QueryMetrics metrics;
+                try {
+                    metrics = answers.get(i).get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+                writer.write(metrics.getAnswer());
+                if (metricsWriter != null) {
+                    metricsWriter.write(metrics.toJson());
+                    metricsWriter.newLine();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 }
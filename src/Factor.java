@@ -6,29 +6,84 @@ import java.util.*;
  * Factor
  * This class represents a factor in a Bayesian Network.
  * A factor is a function that maps an assignment of values to a set of variables to a real number.
- * The factor is represented as a table that maps a set of values to a real number.
+ * The factor is represented as a flat table of real numbers, indexed by the outcome indices of its variables.
  * I.E: P(A=a, B=b,...) = x where x<=1 is a real number. and A, B, ... are variables in the network with outcomes a, b, ...
+ *
+ * The table is stored in row-major order: the last variable changes fastest (the same order as the XML TABLE).
+ * The position of an assignment (a1, a2, ..., an) of outcome indices is a1*stride1 + a2*stride2 + ... + an*striden
+ *
+ * A factor can also hold the logarithms of its values (see toLogSpace), so long products of small numbers do not underflow:
+ * then a join adds the logarithms, and summing out a variable and normalizing use log-sum-exp.
+ *
+ * The factor of a variable with evidence is a view of the table of its CPT: the position of an assignment is
+ * offset + a1*stride1 + ... + an*striden with the strides of the CPT, so no rows are copied.
+ * A view is copied into a table of its own (materialized) only when its whole table is needed (getValues, normalize).
+ * The tables of joins and sum-outs can be taken from a FactorPool and given back with release,
+ * so a query that runs again and again does not allocate new tables.
  */
 public class Factor implements Comparable<Factor>{
-    // the table of the factor is stored as a map of a set of strings to a real number
-    // each set of strings represents an assignment of values to the variables in the factor
-    private Map<Set<String>,Double> table;
-    // the variables in the factor
-    private Map<String,Variable> variables;
+    // the largest table a factor can have (the largest array the JVM can allocate)
+    public static final long MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+
+    // the variables in the factor, in the order of the dimensions of the table
+    private Variable[] variables;
+    // the number of outcomes of each variable
+    private int[] cardinalities;
+    // how far to move in the table when the outcome index of each variable grows by one
+    private int[] strides;
+    // the values of the factor
+    private double[] values;
+    // the position of the first entry of the factor in the table (not 0 only for a view)
+    private int offset;
+    // true if the factor is a view: its strides are those of a larger table it shares
+    private boolean view;
+    // true if the table belongs to this factor only (it was created for it), so it can be changed in place
+    private boolean owned;
+    // true if the table was taken from a pool, and can be given back with release
+    private boolean pooled;
+    // true if the table holds the natural logarithms of the values
+    private boolean logSpace;
 
     /**
-     * Constructor - creates a factor from a set of variables and a table
-     * we use this constructor when we oin two factors or eliminate a variable
-     * @param vars the variables in the factor
-     * @param table the table of the factor
+     * Constructor - creates a factor from an ordered array of variables and a table
+     * we use this constructor when we join two factors or eliminate a variable
+     * @param vars the variables in the factor, in the order of the dimensions of the table
+     * @param values the table of the factor (the last variable changes fastest)
      */
-    public Factor(Set<Variable> vars, Map<Set<String>,Double> table) {
-        this.variables = new HashMap<String,Variable>();
-        for(Variable v : vars){
-            this.variables.put(v.getName(),v);
+    public Factor(Variable[] vars, double[] values) {
+        setVariables(vars);
+        if (values.length != size()) {
+            throw new IllegalArgumentException("Table size " + values.length + " does not match the variables of the factor");
         }
-        this.table = table;
+        this.values = values;
     }
+
+    /**
+     * Constructor - creates a factor with an empty table (all zeros) over an ordered array of variables
+     * we use this constructor internally and then fill in the table
+     * @param vars the variables in the factor, in the order of the dimensions of the table
+     */
+    private Factor(Variable[] vars) {
+        this(vars, (FactorPool) null);
+    }
+
+    /**
+     * Constructor - creates a factor over an ordered array of variables, with a table taken from a pool
+     * we use this constructor internally and then fill in the table (the table may hold old numbers)
+     * @param vars the variables in the factor, in the order of the dimensions of the table
+     * @param pool the pool to take the table from (null to allocate a new table of zeros)
+     */
+    private Factor(Variable[] vars, FactorPool pool) {
+        long size = predictSize(Arrays.asList(vars));
+        if (size > MAX_TABLE_SIZE) {
+            throw new FactorTooLargeException("The table of a factor over " + vars.length + " variables is too large", size, MAX_TABLE_SIZE);
+        }
+        setVariables(vars);
+        this.values = pool == null ? new double[size()] : pool.take(size());
+        this.owned = true;
+        this.pooled = pool != null;
+    }
+
     /**
      * Constructor - creates a factor from a variable
      * we use this constructor when we initially create a factor from a single variable
@@ -36,44 +91,241 @@ public class Factor implements Comparable<Factor>{
      * @param v the variable in the factor
      */
     public Factor(Variable v){
+        this(v, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor - creates the factor of a variable with the evidence already eliminated from it
+     * the factor is a view of the rows of the CPT that are consistent with the evidence, nothing is copied
+     * @param v the variable in the factor
+     * @param evidence the evidence variables and their values
+     */
+    public Factor(Variable v, Map<String, String> evidence){
+        CPT cpt = v.getProbabilityTable();
 
-        //create a set of variables this factor contains
-        this.variables = new HashMap<String,Variable>();
-        this.variables.put(v.getName(),v);
-        for(Variable parent : v.getParents()){
-            this.variables.put(parent.getName(),parent);
+        //the variables of the CPT in its order: the parents and then the variable
+        List<Variable> parents = cpt.getParents();
+        Variable[] cptVars = new Variable[parents.size() + 1];
+        for (int i = 0; i < parents.size(); i++) {
+            cptVars[i] = parents.get(i);
+        }
+        cptVars[parents.size()] = v;
+        if (evidence.isEmpty()) {
+            setVariables(cptVars);
+            // the table of the CPT is already in the order of the factor, so we can share it
+            // (none of the operations modify the table of an existing factor)
+            this.values = cpt.getProbabilities();
+            return;
         }
 
-        //create a table for the factor from the CPT of the variable
-        this.table = new HashMap<Set<String>,Double>();
-        CPT cpt = v.getProbabilityTable();
-        // Change the key from a list to a set
-        for(List<String> key : cpt.getTable().keySet()) {
-            Set<String> newKey = new HashSet<String>(key);
-            table.put(newKey, cpt.getTable().get(key));
+        // the strides of the variables in the table of the CPT (the variable itself is the fastest)
+        int[] cptStrides = new int[cptVars.length];
+        int stride = 1;
+        for (int i = cptVars.length - 1; i >= 0; i--) {
+            cptStrides[i] = stride;
+            stride *= cptVars[i].getOutcomes().size();
         }
 
+        // keep the variables that are not evidence (with their strides in the CPT),
+        // and find the position all the consistent rows start from
+        Variable[] kept = new Variable[cptVars.length];
+        int[] from = new int[cptVars.length];
+        int numOfKept = 0;
+        int offset = 0;
+        for (int i = 0; i < cptVars.length; i++) {
+            String value = evidence.get(cptVars[i].getName());
+            if (value == null) {
+                kept[numOfKept] = cptVars[i];
+                from[numOfKept++] = cptStrides[i];
+                continue;
+            }
+            int index = cptVars[i].getOutcomeIndex(value);
+            if (index < 0) {
+                throw new IllegalArgumentException("Variable " + cptVars[i].getName() + " has no outcome " + value);
+            }
+            offset += index * cptStrides[i];
+        }
+        if (numOfKept == cptVars.length) {
+            setVariables(cptVars);
+            this.values = cpt.getProbabilities();
+            return;
+        }
 
+        // a view of the consistent rows of the table of the CPT
+        setVariables(Arrays.copyOf(kept, numOfKept));
+        this.strides = Arrays.copyOf(from, numOfKept);
+        this.offset = offset;
+        this.view = true;
+        this.values = cpt.getProbabilities();
+    }
+
+    /**
+     * Copy a view into a table of its own, in the usual order of the factor (the last variable changes fastest)
+     * nothing is done if the factor is not a view
+     */
+    private void materialize() {
+        if (!view) {
+            return;
+        }
+        int n = variables.length;
+        double[] newValues = new double[size()];
+        int[] assignment = new int[n];
+        int from = offset;
+        for (int i = 0; i < newValues.length; i++) {
+            newValues[i] = values[from];
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < cardinalities[k]) {
+                    from += strides[k];
+                    break;
+                }
+                assignment[k] = 0;
+                from -= (cardinalities[k] - 1) * strides[k];
+            }
+        }
+        setVariables(variables);
+        this.values = newValues;
+        this.offset = 0;
+        this.view = false;
+        this.owned = true;
+    }
+
+    /**
+     * Give the table of the factor back to the pool it was taken from.
+     * the factor must not be used after it is released. nothing is done if the table is not from a pool
+     * @param pool the pool
+     */
+    public void release(FactorPool pool) {
+        if (pooled && pool != null) {
+            pool.give(values);
+            values = null;
+            pooled = false;
+        }
+    }
+
+    /**
+     * Set the variables of the factor and compute their cardinalities and strides
+     * @param vars the variables in the factor
+     */
+    private void setVariables(Variable[] vars) {
+        this.variables = vars;
+        this.cardinalities = new int[vars.length];
+        this.strides = new int[vars.length];
+        int stride = 1;
+        for (int i = vars.length - 1; i >= 0; i--) {
+            cardinalities[i] = vars[i].getOutcomes().size();
+            strides[i] = stride;
+            stride *= cardinalities[i];
+        }
     }
 
 
     /**
      * Getters:
      */
-    public Map<Set<String>,Double> getTable() {
-        return table;
+    public double[] getValues() {
+        materialize();
+        return values;
     }
     public Collection<Variable> getVariables() {
-        return variables.values();
+        return Arrays.asList(variables);
+    }
+    public boolean contains(Variable v) {
+        return indexOf(v) >= 0;
+    }
+    public boolean isLogSpace() {
+        return logSpace;
     }
 
-    public double getProbability(String outcome) {
-        for(Set<String> key : table.keySet()) {
-            if(key.contains(outcome)) {
-                return table.get(key);
+    /**
+     * @return a factor over the same variables whose table holds the logarithms of the values of this factor
+     * (this factor if it is already in log space)
+     */
+    public Factor toLogSpace() {
+        if (logSpace) {
+            return this;
+        }
+        double[] table = getValues();
+        double[] logValues = new double[table.length];
+        for (int i = 0; i < table.length; i++) {
+            logValues[i] = Math.log(table[i]);
+        }
+        Factor result = new Factor(variables, logValues);
+        result.owned = true;
+        result.logSpace = true;
+        return result;
+    }
+
+    /**
+     * @return the number of entries in the table of the factor
+     */
+    public int size() {
+        int size = 1;
+        for (int c : cardinalities) {
+            size *= c;
+        }
+        return size;
+    }
+
+    /**
+     * Predict the number of entries of a factor over some variables, without creating it
+     * @param vars the variables of the factor
+     * @return the product of the numbers of outcomes of the variables (Long.MAX_VALUE if it does not fit in a long)
+     */
+    public static long predictSize(Collection<Variable> vars) {
+        long size = 1;
+        for (Variable v : vars) {
+            int card = v.getOutcomes().size();
+            if (card != 0 && size > Long.MAX_VALUE / card) {
+                return Long.MAX_VALUE;
+            }
+            size *= card;
+        }
+        return size;
+    }
+
+    /**
+     * @param v a variable
+     * @return the position of the variable in the factor, or -1 if the factor does not contain it
+     */
+    private int indexOf(Variable v) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i] == v) {
+                return i;
             }
         }
-        return 0.0;
+        return -1;
+    }
+
+    /**
+     * @param name the name of a variable
+     * @return the position of the variable in the factor, or -1 if the factor does not contain it
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the value of the first row of the table in which the variable has the given outcome
+     * @param outcome a string of the form "Var=value"
+     * @return the value, or 0 if the factor does not contain the outcome
+     */
+    public double getProbability(String outcome) {
+        String[] parts = outcome.split("=");
+        int pos = indexOf(parts[0]);
+        if (pos < 0) {
+            return 0.0;
+        }
+        int index = variables[pos].getOutcomeIndex(parts[1]);
+        if (index < 0) {
+            return 0.0;
+        }
+        double value = values[offset + index * strides[pos]];
+        return logSpace ? Math.exp(value) : value;
     }
 
     /**
@@ -82,53 +334,40 @@ public class Factor implements Comparable<Factor>{
     public void printFactor() {
         System.out.println();
         System.out.println("Factor:");
-        for (Variable v : variables.values()) {
+        for (Variable v : variables) {
             System.out.print(v.getName()+", ");
         }
-        System.out.println("\nsize: "+table.size());
-        for (Set<String> key : table.keySet()) {
-            System.out.println(key + " : " + table.get(key));
+        System.out.println("\nsize: "+size());
+        materialize();
+        for (int i = 0; i < values.length; i++) {
+            System.out.println(rowToString(i) + " : " + values[i]);
         }
     }
 
-
     /**
-     * Eliminate the Evidence Variables from this factor
-     * @param evidence a map of evidence variables and their values
+     * @param row a position in the table
+     * @return the assignment of the row in the form [A=a, B=b, ...]
      */
-    public void eliminateEvidence(Map<String,String> evidence) {
-        if(evidence.isEmpty()) {
-            return;
-        }
-        Set<String> evidenceStrings = new HashSet<>();
-        for(String key : evidence.keySet()) {
-            if(variables.containsKey(key)) {
-                evidenceStrings.add(key + "=" + evidence.get(key));
-            }
-        }
-        // Create a new table and a new list of variables
-        Map<String,Variable> newVariables = new HashMap<String,Variable>();
-
-        // Iterate over the table and remove anything but the evidence variables
-        for(String e : evidenceStrings) {
-            Map<Set<String>,Double> newTable= new HashMap<Set<String>,Double>();
-            for (Set<String> key : table.keySet()) {
-                if (key.contains(e)) {
-                    Set<String> newKey = new HashSet<String>(key);
-                    newKey.remove(e);
-                    newTable.put(newKey, table.get(key));
-                }
-            }
-            table = newTable;
+    private String rowToString(int row) {
+        List<String> assignment = new ArrayList<String>();
+        for (int i = 0; i < variables.length; i++) {
+            int outcome = (row / strides[i]) % cardinalities[i];
+            assignment.add(variables[i].getName() + "=" + variables[i].getOutcomes().get(outcome));
         }
+        return assignment.toString();
+    }
 
-        // Update the variables
-        for(String key : variables.keySet()) {
-            if(!evidence.containsKey(key)) {
-                newVariables.put(key,variables.get(key));
-            }
+    /**
+     * @param vars the variables of a factor
+     * @return the strides of the given variables in this table (0 for a variable the factor does not contain)
+     */
+    private int[] stridesOf(Variable[] vars) {
+        int[] result = new int[vars.length];
+        for (int i = 0; i < vars.length; i++) {
+            int pos = indexOf(vars[i]);
+            result[i] = pos < 0 ? 0 : strides[pos];
         }
-        this.variables = newVariables;
+        return result;
     }
 
     /**
@@ -138,57 +377,62 @@ public class Factor implements Comparable<Factor>{
      * @return the new factor
      */
     public Factor join(Factor f2, Variable hidden){
-        List<Variable> varsToJoin = new ArrayList<Variable>();
-        varsToJoin.add(hidden);
-        for(Variable v : f2.getVariables()){
-            if(this.variables.containsKey(v.getName())){
-                varsToJoin.add(v);
+        return join(f2, hidden, null);
+    }
+
+    /**
+     * join two factors on a hidden variable
+     * @param f2 the factor to join with
+     * @param hidden the hidden variable to join on
+     * @param pool the pool to take the table of the new factor from (null to allocate it)
+     * @return the new factor
+     */
+    public Factor join(Factor f2, Variable hidden, FactorPool pool){
+        if (logSpace != f2.logSpace) {
+            throw new IllegalArgumentException("Cannot join a factor in log space with a factor that is not");
+        }
+        // the variables of the new factor: the variables of this factor and then the new ones from f2
+        List<Variable> newVars = new ArrayList<Variable>(Arrays.asList(this.variables));
+        for (Variable v : f2.variables) {
+            if (this.indexOf(v) < 0) {
+                newVars.add(v);
             }
         }
+        Factor result = new Factor(newVars.toArray(new Variable[0]), pool);
+        result.logSpace = logSpace;
+        boolean log = logSpace;
 
+        // every row of the new table is the product of the matching rows of the two factors.
+        // we walk the rows of the new table in order like an odometer (the last variable is the fastest digit)
+        // and keep the matching positions in the two tables up to date using their strides
+        int n = result.variables.length;
+        int[] strides1 = this.stridesOf(result.variables);
+        int[] strides2 = f2.stridesOf(result.variables);
+        int[] cards = result.cardinalities;
+        int[] assignment = new int[n];
+        double[] values1 = this.values;
+        double[] values2 = f2.values;
+        double[] newValues = result.values;
+        int pos1 = this.offset;
+        int pos2 = f2.offset;
+        for (int i = 0; i < newValues.length; i++) {
+            // in log space the product is the sum of the logarithms
+            newValues[i] = log ? values1[pos1] + values2[pos2] : values1[pos1] * values2[pos2];
 
-        // Create a new factor
-        Set<Variable> newVars = new HashSet<>();
-        newVars.addAll(this.getVariables());
-        newVars.addAll(f2.getVariables());
-
-        // Create a new table
-        Map<Set<String>,Double> newTable = new HashMap<Set<String>,Double>();
-
-        for(Set<String> key1 : this.table.keySet()) {
-            Set<String> joinOutcomes = new HashSet<>();
-            for(Variable v : varsToJoin){
-                for(String outcome : v.getOutcomes()){
-                    String outString = v.getName() + "=" + outcome;
-                    if(key1.contains(outString)){
-                        joinOutcomes.add(outString);
-                    }
-                }
-            }
-            for(Set<String> key2 : f2.getTable().keySet()) {
-                if(contains(key2, joinOutcomes)){
-                    Set<String> newKey = new HashSet<>(key1);
-                    newKey.addAll(key2);
-                    newTable.put(newKey, this.table.get(key1) * f2.getTable().get(key2));
+            // advance the odometer
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < cards[k]) {
+                    pos1 += strides1[k];
+                    pos2 += strides2[k];
+                    break;
                 }
+                // this digit wraps around to 0 and the next one advances
+                assignment[k] = 0;
+                pos1 -= (cards[k] - 1) * strides1[k];
+                pos2 -= (cards[k] - 1) * strides2[k];
             }
         }
-        return new Factor(newVars, newTable);
-    }
-
-    /**
-     * Check if a set of strings (Key1) contains another set of strings (Key2)
-     * @param key1 the set to check
-     * @param key2 the set to check for
-     * @return true if key1 contains key2, false otherwise
-     */
-    private boolean contains(Set<String> key1, Set<String> key2){
-        for(String s : key2){
-            if(!key1.contains(s)){
-                return false;
-            }
-        }
-        return true;
+        return result;
     }
 
     /**
@@ -198,48 +442,114 @@ public class Factor implements Comparable<Factor>{
      */
 
     public Factor EliminateVariable(Variable hidden) {
-        if(!this.variables.containsKey(hidden.getName())) {
+        return EliminateVariable(hidden, null);
+    }
+
+    /**
+     * Eliminate a variable from the factor (see above)
+     * @param hidden the variable to sum out
+     * @param pool the pool to take the table of the new factor from (null to allocate it)
+     * @return the new factor
+     */
+    public Factor EliminateVariable(Variable hidden, FactorPool pool) {
+        int pos = indexOf(hidden);
+        if(pos < 0) {
             throw new RuntimeException("Variable not in factor");
         }
 
         // Create a new factor
-        Set<Variable> newVars = new HashSet<>(this.getVariables());
-        newVars.remove(hidden);
-
-        Map<Set<String>,Double> newTable = new HashMap<Set<String>,Double>();
-
-        // Iterate over the table and sum out the hidden variable
-        for(String outcome : hidden.getOutcomes()) {
-            String hiddenOutcome = hidden.getName()+"="+outcome;
-            for(Set<String> key : table.keySet()) {
-                if(key.contains(hiddenOutcome)) {
-                    Set<String> newKey = new HashSet<>(key);
-                    newKey.remove(hiddenOutcome);
-                    if(newTable.containsKey(newKey)) {
-                        newTable.put(newKey, newTable.get(newKey) + table.get(key));
-                    } else {
-                        newTable.put(newKey, table.get(key));
-                    }
+        Variable[] newVars = new Variable[variables.length - 1];
+        for (int i = 0, j = 0; i < variables.length; i++) {
+            if (i != pos) {
+                newVars[j++] = variables[i];
+            }
+        }
+        Factor result = new Factor(newVars, pool);
+        result.logSpace = logSpace;
+
+        // Iterate over the new table and sum out the hidden variable
+        // the matching position in this table follows the rows of the new table like an odometer
+        int n = newVars.length;
+        int[] oldStrides = this.stridesOf(newVars);
+        int[] cards = result.cardinalities;
+        int[] assignment = new int[n];
+        int hiddenStride = strides[pos];
+        int hiddenCard = cardinalities[pos];
+        double[] newValues = result.values;
+        int from = offset;
+        for (int i = 0; i < newValues.length; i++) {
+            if (logSpace) {
+                newValues[i] = logSumExp(values, from, hiddenStride, hiddenCard);
+            } else {
+                double sum = values[from];
+                for (int h = 1; h < hiddenCard; h++) {
+                    sum += values[from + h * hiddenStride];
                 }
+                newValues[i] = sum;
+            }
+
+            // advance the odometer
+            for (int k = n - 1; k >= 0; k--) {
+                if (++assignment[k] < cards[k]) {
+                    from += oldStrides[k];
+                    break;
+                }
+                assignment[k] = 0;
+                from -= (cards[k] - 1) * oldStrides[k];
             }
         }
-        return new Factor(newVars, newTable);
+        return result;
     }
 
     /**
-     * Normalize the factor
+     * The logarithm of a sum of numbers given by their logarithms: log(exp(x1) + ... + exp(xn)).
+     * the largest logarithm is taken out of the sum first, so the exponents do not underflow or overflow
+     * @param logs the table of logarithms
+     * @param from the position of the first number
+     * @param stride the distance between the numbers
+     * @param count the number of numbers
+     * @return the logarithm of the sum (-Infinity if all the numbers are 0)
      */
-    public void normalize() {
+    static double logSumExp(double[] logs, int from, int stride, int count) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int h = 0; h < count; h++) {
+            max = Math.max(max, logs[from + h * stride]);
+        }
+        if (max == Double.NEGATIVE_INFINITY || Double.isNaN(max)) {
+            return max;
+        }
         double sum = 0;
-        for(Double d : table.values()) {
-            sum += d;
+        for (int h = 0; h < count; h++) {
+            sum += Math.exp(logs[from + h * stride] - max);
         }
-        Map<Set<String>,Double> newTable = new HashMap<Set<String>,Double>();
-        for(Set<String> key : table.keySet()) {
-            newTable.put(key, table.get(key)/sum);
+        return max + Math.log(sum);
+    }
+
+    /**
+     * Normalize the factor
+     */
+    public void normalize() {
+        materialize();
+        // a table that may be shared with a CPT is normalized into a new table, a table of our own in place
+        double[] newValues = owned ? values : new double[values.length];
+        if (logSpace) {
+            // subtract the logarithm of the sum from every logarithm
+            double logSum = logSumExp(values, 0, 1, values.length);
+            for (int i = 0; i < values.length; i++) {
+                newValues[i] = values[i] - logSum;
+            }
+        } else {
+            double sum = 0;
+            for(double d : values) {
+                sum += d;
+            }
+            for(int i = 0; i < values.length; i++) {
+                newValues[i] = values[i]/sum;
+            }
         }
         // Update the table
-        this.table = newTable;
+        this.values = newValues;
+        this.owned = true;
     }
 
     /**
@@ -248,14 +558,14 @@ public class Factor implements Comparable<Factor>{
      */
     @Override
     public int compareTo(Factor f) {
-        if(this.table.size() > f.getTable().size()) {
+        if(this.size() > f.size()) {
             return 1;
-        } else if(this.table.size() < f.getTable().size()) {
+        } else if(this.size() < f.size()) {
             return -1;
         }else{
             int ASCIISum1 = 0;
             int ASCIISum2 = 0;
-            for(Variable v : this.variables.values()){
+            for(Variable v : this.variables){
                 for(char c : v.getName().toCharArray()){
                     ASCIISum1 += (int)c;
                 }
@@ -273,12 +583,13 @@ public class Factor implements Comparable<Factor>{
      */
      public String toString() {
          String s = "Variables: ";
-         for (Variable v : variables.values()) {
+         for (Variable v : variables) {
              s += v.getName() + ", ";
          }
          s += "\n Table: \n";
-         for (Set<String> key : table.keySet()) {
-             s += key + " : " + table.get(key) + "\n";
+         materialize();
+         for (int i = 0; i < values.length; i++) {
+             s += rowToString(i) + " : " + values[i] + "\n";
          }
          return s;
      }
@@ -5,9 +5,9 @@ import java.util.Comparator;
 public class FactorComperator implements Comparator<Factor> {
     @Override
     public int compare(Factor o1, Factor o2) {
-        if(o1.getTable().size() > o2.getTable().size()) {
+        if(o1.size() > o2.size()) {
             return 1;
-        } else if(o1.getTable().size() < o2.getTable().size()) {
+        } else if(o1.size() < o2.size()) {
             return -1;
         }else{
             int ASCIISum1 = 0;
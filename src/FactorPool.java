@@ -0,0 +1,109 @@
+package src;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FactorPool
+ * A pool of tables (double arrays) for the factors of Variable Elimination.
+ * The factors a query creates and then drops (the products of joins and the results of summing out)
+ * give their tables back to the pool, and the next query takes them again instead of allocating new ones.
+ * Tables are kept by their exact length, so a query that is asked again finds all the tables it needs.
+ * The tables a pool keeps are limited in number per length and in total bytes,
+ * so the pools of a long running server with many threads stay small; other tables are left to the garbage collector.
+ * A pool is not thread safe: every thread uses its own pool (see local).
+ */
+public class FactorPool {
+
+    // the most tables of one length that the pool keeps
+    public static final int MAX_TABLES_PER_SIZE = 16;
+    // the longest table that the pool keeps (larger tables are left to the garbage collector)
+    public static final int MAX_POOLED_SIZE = 1 << 20;
+    // the most bytes of tables that one pool keeps
+    public static final long DEFAULT_MAX_BYTES = 16L << 20;
+
+    private static final ThreadLocal<FactorPool> LOCAL = ThreadLocal.withInitial(FactorPool::new);
+
+    // the free tables by their length
+    private final Map<Integer, ArrayDeque<double[]>> free = new HashMap<>();
+    // the most bytes of tables the pool keeps, and the bytes of the tables in it
+    private final long maxBytes;
+    private long bytes;
+
+    /**
+     * Constructor - a pool that keeps up to DEFAULT_MAX_BYTES of tables
+     */
+    public FactorPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor
+     * @param maxBytes the most bytes of tables the pool keeps
+     */
+    public FactorPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the pool of the current thread
+     */
+    public static FactorPool local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Take a table of a given length, from the pool if there is one and a new one otherwise
+     * @param size the length of the table
+     * @return a table of the given length (the numbers in it are not defined)
+     */
+    public double[] take(int size) {
+        ArrayDeque<double[]> tables = free.get(size);
+        if (tables == null || tables.isEmpty()) {
+            return new double[size];
+        }
+        double[] table = tables.pop();
+        bytes -= bytesOf(table);
+        return table;
+    }
+
+    /**
+     * Give a table back to the pool
+     * the pool drops the table if it already keeps enough tables of its length or enough bytes
+     * the table must not be used after it is given back
+     * @param table the table
+     */
+    public void give(double[] table) {
+        if (table == null || table.length > MAX_POOLED_SIZE || bytes + bytesOf(table) > maxBytes) {
+            return;
+        }
+        ArrayDeque<double[]> tables = free.computeIfAbsent(table.length, k -> new ArrayDeque<>());
+        if (tables.size() < MAX_TABLES_PER_SIZE) {
+            tables.push(table);
+            bytes += bytesOf(table);
+        }
+    }
+
+    /**
+     * @return the bytes of the tables in the pool
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private static long bytesOf(double[] table) {
+        return (long) table.length * Double.BYTES;
+    }
+
+    /**
+     * @return the number of tables in the pool
+     */
+    public int size() {
+        int size = 0;
+        for (ArrayDeque<double[]> tables : free.values()) {
+            size += tables.size();
+        }
+        return size;
+    }
+}
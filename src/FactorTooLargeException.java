@@ -0,0 +1,37 @@
+package src;
+
+/**
+ * FactorTooLargeException.java
+ * Thrown before a factor is allocated when its table would have more entries than allowed:
+ * more than the budget of the network (see BayesianNetwork.setMaxFactorSize) or more than fit in an array.
+ * The predicted size is computed from the cardinalities of the variables, so nothing large is allocated.
+ */
+public class FactorTooLargeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long predictedSize;
+    private final long maxSize;
+
+    /**
+     * Constructor
+     * @param message what was too large
+     * @param predictedSize the number of entries the factor would have (Long.MAX_VALUE if it does not fit in a long)
+     * @param maxSize the largest number of entries allowed
+     */
+    public FactorTooLargeException(String message, long predictedSize, long maxSize) {
+        super(message + ": " + (predictedSize == Long.MAX_VALUE ? "more than " + Long.MAX_VALUE : predictedSize)
+                + " entries, the limit is " + maxSize);
+        this.predictedSize = predictedSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Getters
+     */
+    public long getPredictedSize() {
+        return predictedSize;
+    }
+    public long getMaxSize() {
+        return maxSize;
+    }
+}
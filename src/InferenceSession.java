@@ -0,0 +1,95 @@
+package src;
+
+import java.util.*;
+
+/**
+ * InferenceSession.java
+ * This class follows a single case whose evidence arrives one observation at a time.
+ * The session works on its own copy of the compiled junction tree of the network,
+ * so observing, changing or retracting a variable only recomputes the messages on the path
+ * between the home clique of the variable and the clique of the next posterior (see JunctionTree).
+ *
+ * For example:
+ *      InferenceSession session = new InferenceSession(bn);
+ *      session.observe("J", "T");
+ *      session.observe("M", "T");
+ *      Map<String, Double> b = session.marginal("B");   // P(B|J=T,M=T)
+ *      session.retract("M");
+ *      b = session.marginal("B");                        // P(B|J=T)
+ *
+ * A session is not thread safe, but several sessions of the same network can be used at the same time.
+ */
+public class InferenceSession {
+
+    private final BayesianNetwork bn;
+    private final JunctionTree tree;
+    // the current evidence, in the order it was observed
+    private final Map<String, String> evidence;
+
+    /**
+     * Constructor - starts a case with no evidence
+     * @param bn the Bayesian Network
+     */
+    public InferenceSession(BayesianNetwork bn) {
+        this.bn = bn;
+        this.tree = new JunctionTree(bn.getJunctionTree());
+        this.evidence = new LinkedHashMap<>();
+    }
+
+    /**
+     * Observe the value of a variable, or change the value it was observed with
+     * @param name the name of the variable
+     * @param value the observed outcome
+     */
+    public void observe(String name, String value) {
+        tree.observe(name, value);
+        evidence.put(name, value);
+    }
+
+    /**
+     * Remove the observation of a variable
+     * @param name the name of the variable
+     */
+    public void retract(String name) {
+        tree.retract(name);
+        evidence.remove(name);
+    }
+
+    /**
+     * Remove all the observations
+     */
+    public void clear() {
+        for (String name : new ArrayList<>(evidence.keySet())) {
+            retract(name);
+        }
+    }
+
+    /**
+     * Compute the posterior of a variable given the current evidence
+     * @param name the name of the variable
+     * @return a map of the outcomes of the variable to their probabilities, in the order of the outcomes
+     */
+    public Map<String, Double> marginal(String name) {
+        double[] posterior = tree.marginal(name);
+        List<String> outcomes = bn.getVariable(name).getOutcomes();
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            result.put(outcomes.get(i), posterior[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the current evidence, in the order it was observed
+     */
+    public Map<String, String> getEvidence() {
+        return Collections.unmodifiableMap(evidence);
+    }
+
+    /**
+     * @return the junction tree of the session (for its counters of additions and multiplications)
+     */
+    public JunctionTree getTree() {
+        return tree;
+    }
+}
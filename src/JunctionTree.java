@@ -0,0 +1,606 @@
+package src;
+
+import java.util.*;
+
+/**
+ * JunctionTree.java
+ * This class implements the junction tree (clique tree) algorithm for a Bayesian Network.
+ * Unlike Variable Elimination, which answers one query at a time, the junction tree computes
+ * the marginals of all the variables under the same evidence with two passes of messages over the tree.
+ *
+ * The tree is built once for the network:
+ *  1. moralization - the factor of every variable connects the variable and its parents
+ *  2. triangulation - we eliminate all the variables with the min-fill heuristic (see EliminationOrder),
+ *     and the clique of every variable is the variable and its neighbours when it was eliminated
+ *  3. the clique tree - the parent of the clique of a variable is the clique of its neighbour that was eliminated first
+ *     (the elimination tree), and a clique that is contained in a neighbouring clique is merged into it
+ *  4. every CPT is assigned to a clique that contains the variable and its parents
+ *
+ * The messages are passed with the Shafer-Shenoy scheme: the message from clique i to clique j is the product of
+ * the potential of i and the messages from all the other neighbours of i, summed over the variables that are not in j.
+ * The evidence is a vector over the outcomes of a variable (1 for the observed outcome, 0 for the others)
+ * that is multiplied into the potential of the home clique of the variable.
+ *
+ * The messages are computed lazily: the posterior of a variable only needs the messages towards its home clique.
+ * When the evidence of a variable changes, only the messages that lead away from its home clique are dropped,
+ * since every other message does not depend on it. So a new observation only recomputes the messages
+ * on the path from the home clique of the observation to the clique of the next posterior.
+ *
+ * A junction tree holds the evidence and the messages of the current case, so it is not thread safe.
+ * Cases that are processed at the same time should each use a copy of the compiled tree (see the copy constructor).
+ */
+public class JunctionTree {
+
+    private final BayesianNetwork bn;
+    // the variables of every clique
+    private final Variable[][] cliques;
+    private final List<Set<Variable>> cliqueSets;
+    // the neighbours of every clique in the tree
+    private final int[][] neighbours;
+    // reverse[i][k] is the position of clique i among the neighbours of its neighbour neighbours[i][k]
+    private final int[][] reverse;
+    // the cliques in an order where every clique comes after its parent, and the parent of every clique (-1 for a root)
+    private final int[] order;
+    private final int[] parent;
+    // the product of the CPTs assigned to every clique
+    private final Factor[] potentials;
+    // the clique that holds the evidence of every variable, indexed by the variable id (-1 if the variable is in no clique)
+    private final int[] home;
+
+    // the evidence of the current case, indexed by the variable id (null if the variable is not observed)
+    private final double[][] likelihoods;
+    // the potentials with the evidence multiplied in (null until computed)
+    private final Factor[] evidencePotentials;
+    // messages[i][k] is the message from clique i to clique neighbours[i][k] (null until computed)
+    private final Factor[][] messages;
+
+    // the number of additions and multiplications since the counters were reset
+    private int numOfAdditions;
+    private int numOfMultiplications;
+
+    /**
+     * Constructor - compiles the junction tree of a network
+     * @param bn the Bayesian Network
+     */
+    public JunctionTree(BayesianNetwork bn) {
+        this.bn = bn;
+        // moralization: the factors of the variables that have a table
+        List<Factor> factors = new ArrayList<>();
+        for (Variable v : bn.getVariables().values()) {
+            if (v.getProbabilityTable() != null) {
+                factors.add(new Factor(v));
+            }
+        }
+
+        // triangulation: eliminate all the variables, the order position of every variable is indexed by its id
+        EliminationOrder elimination = EliminationOrder.compute(factors, null, EliminationOrder.Heuristic.MIN_FILL);
+        List<Variable> eliminated = elimination.getOrder();
+        List<List<Variable>> eliminationCliques = elimination.getCliques();
+        int n = eliminated.size();
+        int[] position = new int[bn.size()];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < n; i++) {
+            position[eliminated.get(i).getId()] = i;
+        }
+
+        // the elimination tree: the parent of a clique is the clique of the first of its other variables to be eliminated
+        int[] treeParent = new int[n];
+        for (int i = 0; i < n; i++) {
+            treeParent[i] = -1;
+            for (Variable u : eliminationCliques.get(i)) {
+                int p = position[u.getId()];
+                if (p != i && (treeParent[i] < 0 || p < treeParent[i])) {
+                    treeParent[i] = p;
+                }
+            }
+        }
+
+        // merge every clique that is contained in one of its children into the child.
+        // a child is always eliminated before its parent, so all the children of a clique are handled before it
+        int[] merged = new int[n];
+        for (int i = 0; i < n; i++) {
+            merged[i] = i;
+        }
+        List<Set<Variable>> sets = new ArrayList<>();
+        for (List<Variable> clique : eliminationCliques) {
+            sets.add(new HashSet<>(clique));
+        }
+        for (int i = 0; i < n; i++) {
+            if (merged[i] != i) continue;
+            int p = treeParent[i] < 0 ? -1 : find(merged, treeParent[i]);
+            treeParent[i] = p;
+            if (p >= 0 && sets.get(i).containsAll(sets.get(p))) {
+                merged[p] = i;
+                treeParent[i] = treeParent[p];
+            }
+        }
+
+        // number the cliques that were not merged
+        int[] index = new int[n];
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (merged[i] == i) {
+                index[i] = kept.size();
+                kept.add(i);
+            }
+        }
+        int m = kept.size();
+        this.cliques = new Variable[m][];
+        this.cliqueSets = new ArrayList<>();
+        this.parent = new int[m];
+        List<List<Integer>> adjacent = new ArrayList<>();
+        for (int c = 0; c < m; c++) {
+            adjacent.add(new ArrayList<>());
+        }
+        for (int c = 0; c < m; c++) {
+            int i = kept.get(c);
+            cliques[c] = eliminationCliques.get(i).toArray(new Variable[0]);
+            cliqueSets.add(sets.get(i));
+            int p = treeParent[i] < 0 ? -1 : index[find(merged, treeParent[i])];
+            parent[c] = p;
+            if (p >= 0) {
+                adjacent.get(c).add(p);
+                adjacent.get(p).add(c);
+            }
+        }
+        this.neighbours = new int[m][];
+        for (int c = 0; c < m; c++) {
+            neighbours[c] = adjacent.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.reverse = new int[m][];
+        for (int c = 0; c < m; c++) {
+            reverse[c] = new int[neighbours[c].length];
+            for (int k = 0; k < neighbours[c].length; k++) {
+                reverse[c][k] = indexOf(neighbours[neighbours[c][k]], c);
+            }
+        }
+
+        // order the cliques from the roots down
+        this.order = new int[m];
+        int size = 0;
+        for (int c = 0; c < m; c++) {
+            if (parent[c] < 0) {
+                order[size++] = c;
+            }
+        }
+        for (int head = 0; head < size; head++) {
+            int c = order[head];
+            for (int nb : neighbours[c]) {
+                if (nb != parent[c]) {
+                    order[size++] = nb;
+                }
+            }
+        }
+
+        // the home clique of a variable is the clique it was eliminated in.
+        // it contains the variable and all its neighbours that were eliminated after it,
+        // so it also contains the family of a variable whose member was eliminated first
+        this.home = new int[bn.size()];
+        Arrays.fill(home, -1);
+        for (Variable v : eliminated) {
+            home[v.getId()] = index[find(merged, position[v.getId()])];
+        }
+        this.potentials = new Factor[m];
+        for (Factor f : factors) {
+            int first = -1;
+            for (Variable v : f.getVariables()) {
+                if (first < 0 || position[v.getId()] < position[first]) {
+                    first = v.getId();
+                }
+            }
+            int c = home[first];
+            potentials[c] = potentials[c] == null ? f : potentials[c].join(f, null);
+        }
+        for (int c = 0; c < m; c++) {
+            if (potentials[c] == null) {
+                potentials[c] = unit();
+            }
+        }
+
+        this.likelihoods = new double[bn.size()][];
+        this.evidencePotentials = new Factor[m];
+        this.messages = newMessages(neighbours);
+    }
+
+    /**
+     * Copy constructor - creates a tree with the structure and potentials of a compiled tree and no evidence
+     * the structure is shared, so this is much cheaper than compiling the tree again
+     * @param compiled the compiled tree
+     */
+    public JunctionTree(JunctionTree compiled) {
+        this.bn = compiled.bn;
+        this.cliques = compiled.cliques;
+        this.cliqueSets = compiled.cliqueSets;
+        this.neighbours = compiled.neighbours;
+        this.reverse = compiled.reverse;
+        this.order = compiled.order;
+        this.parent = compiled.parent;
+        this.potentials = compiled.potentials;
+        this.home = compiled.home;
+        this.likelihoods = new double[compiled.likelihoods.length][];
+        this.evidencePotentials = new Factor[cliques.length];
+        this.messages = newMessages(neighbours);
+    }
+
+    /**
+     * @param neighbours the neighbours of every clique
+     * @return an empty table of messages, one for every neighbour of every clique
+     */
+    private static Factor[][] newMessages(int[][] neighbours) {
+        Factor[][] messages = new Factor[neighbours.length][];
+        for (int c = 0; c < neighbours.length; c++) {
+            messages[c] = new Factor[neighbours[c].length];
+        }
+        return messages;
+    }
+
+    /**
+     * @param merged the clique every clique was merged into (itself if it was not merged)
+     * @param i a clique
+     * @return the clique that i was finally merged into
+     */
+    private static int find(int[] merged, int i) {
+        while (merged[i] != i) {
+            i = merged[i];
+        }
+        return i;
+    }
+
+    /**
+     * @return a factor with no variables and the value 1
+     */
+    private static Factor unit() {
+        return new Factor(new Variable[0], new double[]{1.0});
+    }
+
+    /**
+     * Getters
+     */
+    public int getNumOfCliques() {
+        return cliques.length;
+    }
+    public int getNumOfAdditions() {
+        return numOfAdditions;
+    }
+    public int getNumOfMultiplications() {
+        return numOfMultiplications;
+    }
+
+    /**
+     * @return the number of entries in the largest clique of the tree
+     */
+    public long getMaxCliqueSize() {
+        long max = 0;
+        for (Variable[] clique : cliques) {
+            long size = 1;
+            for (Variable v : clique) {
+                size *= v.getOutcomes().size();
+            }
+            max = Math.max(max, size);
+        }
+        return max;
+    }
+
+    /**
+     * Reset the number of additions and multiplications
+     */
+    public void resetCounters() {
+        numOfAdditions = 0;
+        numOfMultiplications = 0;
+    }
+
+    /**
+     * Set the evidence of the case, instead of the previous evidence
+     * only the variables whose evidence changed drop the messages that depend on them
+     * @param evidence the observed variables and their values
+     */
+    public void setEvidence(Map<String, String> evidence) {
+        for (int id = 0; id < likelihoods.length; id++) {
+            if (likelihoods[id] != null && !evidence.containsKey(getVariableName(id))) {
+                setLikelihood(id, null);
+            }
+        }
+        for (Map.Entry<String, String> e : evidence.entrySet()) {
+            observe(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Observe the value of a variable (or change its observed value)
+     * @param name the name of the variable
+     * @param value the observed outcome
+     */
+    public void observe(String name, String value) {
+        Variable v = variable(name);
+        int outcome = v.getOutcomeIndex(value);
+        if (outcome < 0) {
+            throw new IllegalArgumentException("Unknown outcome " + value + " of variable " + v.getName());
+        }
+        double[] likelihood = new double[v.getOutcomes().size()];
+        likelihood[outcome] = 1.0;
+        setLikelihood(v.getId(), likelihood);
+    }
+
+    /**
+     * Remove the observation of a variable (nothing happens if it was not observed)
+     * @param name the name of the variable
+     */
+    public void retract(String name) {
+        setLikelihood(variable(name).getId(), null);
+    }
+
+    /**
+     * @param id the id of a variable
+     * @return the name of the variable, or null if the variable is in no clique
+     */
+    private String getVariableName(int id) {
+        int c = home[id];
+        if (c < 0) {
+            return null;
+        }
+        for (Variable v : cliques[c]) {
+            if (v.getId() == id) {
+                return v.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Change the evidence of a variable and drop the messages that depend on it:
+     * the potential of its home clique and the messages that lead away from the home clique
+     * @param id the id of the variable
+     * @param likelihood the new evidence of the variable (null if it is not observed)
+     */
+    private void setLikelihood(int id, double[] likelihood) {
+        if (Arrays.equals(likelihoods[id], likelihood)) {
+            return;
+        }
+        likelihoods[id] = likelihood;
+        int c = home[id];
+        evidencePotentials[c] = null;
+
+        // a message that was not computed has no computed messages that depend on it,
+        // so the walk stops at the first message that is already missing
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(c);
+        stack.push(-1);
+        while (!stack.isEmpty()) {
+            int from = stack.pop();
+            int u = stack.pop();
+            for (int k = 0; k < neighbours[u].length; k++) {
+                int nb = neighbours[u][k];
+                if (nb != from && messages[u][k] != null) {
+                    messages[u][k] = null;
+                    stack.push(nb);
+                    stack.push(u);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name the name of a variable
+     * @return the variable, if it is in one of the cliques
+     */
+    private Variable variable(String name) {
+        Variable v = bn.getVariable(name);
+        if (home[v.getId()] < 0) {
+            throw new RuntimeException("Variable has no table: " + name);
+        }
+        return v;
+    }
+
+    /**
+     * Pass all the messages of the tree: from the leaves up to the roots, then from the roots down to the leaves.
+     * messages that were already computed for the current evidence are not computed again
+     */
+    public void calibrate() {
+        for (int c : order) {
+            collect(c);
+        }
+    }
+
+    /**
+     * Compute the messages to a clique that are missing, and the missing messages they depend on.
+     * we walk away from the clique through the missing messages, then compute them in the reverse order,
+     * so every message is computed after the messages it depends on
+     * @param root the clique
+     */
+    private void collect(int root) {
+        // every entry is a clique and the position of the neighbour it sends its message to
+        List<int[]> missing = new ArrayList<>();
+        Deque<int[]> stack = new ArrayDeque<>();
+        for (int k = 0; k < neighbours[root].length; k++) {
+            int nb = neighbours[root][k];
+            if (messages[nb][reverse[root][k]] == null) {
+                stack.push(new int[]{nb, reverse[root][k]});
+            }
+        }
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            missing.add(entry);
+            int u = entry[0];
+            int to = neighbours[u][entry[1]];
+            for (int k = 0; k < neighbours[u].length; k++) {
+                int nb = neighbours[u][k];
+                if (nb != to && messages[nb][reverse[u][k]] == null) {
+                    stack.push(new int[]{nb, reverse[u][k]});
+                }
+            }
+        }
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            computeMessage(missing.get(i)[0], missing.get(i)[1]);
+        }
+    }
+
+    /**
+     * Compute the posterior of a variable given the current evidence
+     * @param name the name of the variable
+     * @return the probability of every outcome of the variable, in the order of the outcomes
+     */
+    public double[] marginal(String name) {
+        Variable v = variable(name);
+        int c = home[v.getId()];
+        collect(c);
+        return marginal(belief(c), v);
+    }
+
+    /**
+     * Compute the posteriors of all the variables given the current evidence
+     * every belief of a clique is computed once and gives the posteriors of all the variables it is the home of
+     * @return a map of the variable names to the probability of every outcome of the variable
+     */
+    public Map<String, double[]> marginals() {
+        calibrate();
+        Map<Integer, List<Variable>> byClique = new TreeMap<>();
+        for (Variable[] clique : cliques) {
+            for (Variable v : clique) {
+                byClique.computeIfAbsent(home[v.getId()], k -> new ArrayList<>()).add(v);
+            }
+        }
+        Map<String, double[]> result = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<Variable>> e : byClique.entrySet()) {
+            Factor belief = belief(e.getKey());
+            for (Variable v : e.getValue()) {
+                if (!result.containsKey(v.getName())) {
+                    result.put(v.getName(), marginal(belief, v));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param belief the belief of a clique that contains the variable
+     * @param v the variable
+     * @return the normalized probability of every outcome of the variable
+     */
+    private double[] marginal(Factor belief, Variable v) {
+        Factor f = sumOutAllBut(belief, Collections.singleton(v));
+        f.normalize();
+        numOfAdditions += f.size() - 1;
+        return f.getValues();
+    }
+
+    /**
+     * @param c a clique (all the messages to it must be computed)
+     * @return the product of the potential of the clique with the evidence and all the messages to the clique
+     */
+    private Factor belief(int c) {
+        Factor f = evidencePotential(c);
+        for (int k = 0; k < neighbours[c].length; k++) {
+            f = multiply(f, messages[neighbours[c][k]][reverse[c][k]]);
+        }
+        return f;
+    }
+
+    /**
+     * Compute the message from a clique to one of its neighbours
+     * all the messages to the clique from its other neighbours must already be computed
+     * @param i the clique that sends the message
+     * @param k the position of the neighbour that receives the message
+     */
+    private void computeMessage(int i, int k) {
+        int j = neighbours[i][k];
+        Factor f = evidencePotential(i);
+        for (int n = 0; n < neighbours[i].length; n++) {
+            if (n != k) {
+                f = multiply(f, messages[neighbours[i][n]][reverse[i][n]]);
+            }
+        }
+        messages[i][k] = sumOutAllBut(f, cliqueSets.get(j));
+    }
+
+    /**
+     * @param c a clique
+     * @return the potential of the clique multiplied by the evidence of the variables whose home it is
+     */
+    private Factor evidencePotential(int c) {
+        if (evidencePotentials[c] == null) {
+            Factor f = potentials[c];
+            for (Variable v : cliques[c]) {
+                double[] likelihood = likelihoods[v.getId()];
+                if (likelihood != null && home[v.getId()] == c) {
+                    f = multiply(f, new Factor(new Variable[]{v}, likelihood));
+                }
+            }
+            evidencePotentials[c] = f;
+        }
+        return evidencePotentials[c];
+    }
+
+    /**
+     * Multiply two factors and count the multiplications
+     */
+    private Factor multiply(Factor f1, Factor f2) {
+        Factor result = f1.join(f2, null);
+        numOfMultiplications += result.size();
+        return result;
+    }
+
+    /**
+     * Sum out all the variables of a factor that are not in the given set and count the additions
+     * @param f the factor
+     * @param keep the variables to keep
+     * @return the new factor
+     */
+    private Factor sumOutAllBut(Factor f, Set<Variable> keep) {
+        for (Variable v : new ArrayList<>(f.getVariables())) {
+            if (!keep.contains(v)) {
+                int oldSize = f.size();
+                f = f.EliminateVariable(v);
+                numOfAdditions += oldSize - f.size();
+            }
+        }
+        return f;
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method answers a query of the form P(Q=q|E1=e1, E2=e2, …, Ek=ek) with the junction tree of the network
+     * the hidden variables part of the query is ignored, since the tree does not eliminate variables one by one.
+     * every query uses its own copy of the compiled tree of the network, so queries can run at the same time
+     * @param bn the Bayesian Network
+     * @param query the query
+     * @return the answer in the form probability,number of additions,number of multiplications
+     */
+    public static String processJunctionTreeQuery(BayesianNetwork bn, String query) {
+        String[] queryParts = query.split("\\|");
+        String queryVarString = queryParts[0].substring(2);
+        String[] evidenceAndHidden = queryParts[1].split("\\)");
+        String evidenceString = evidenceAndHidden.length > 0 ? evidenceAndHidden[0] : "";
+        HashMap<String, String> evidence = BayesBall.parseEvidence(evidenceString);
+        String[] queryVar = queryVarString.split("=");
+
+        JunctionTree jt = new JunctionTree(bn.getJunctionTree());
+        jt.setEvidence(evidence);
+        double[] posterior = jt.marginal(queryVar[0]);
+        int outcome = bn.getVariable(queryVar[0]).getOutcomeIndex(queryVar[1]);
+        double ans = outcome < 0 ? 0.0 : posterior[outcome];
+        return (Math.round(ans*100000.0)/100000.0) + "," + jt.getNumOfAdditions() + "," + jt.getNumOfMultiplications();
+    }
+
+    /**
+     * To String
+     */
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int c = 0; c < cliques.length; c++) {
+            s.append(c).append(": ");
+            for (Variable v : cliques[c]) {
+                s.append(v.getName()).append(" ");
+            }
+            s.append("(parent ").append(parent[c]).append(")\n");
+        }
+        return s.toString();
+    }
+}
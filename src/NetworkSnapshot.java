@@ -0,0 +1,199 @@
+package src;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * NetworkSnapshot.java
+ * This class saves a loaded Bayesian Network to a compact binary file (a snapshot) and loads it back.
+ * Loading a snapshot is much faster than parsing the XML file: the file is mapped to memory
+ * and the tables are copied directly into the arrays of the CPTs.
+ *
+ * The snapshot stores a checksum of the XML file it was created from,
+ * and it is only loaded if the XML file did not change since.
+ *
+ * The format of the file (all numbers are big-endian):
+ *  1. header: magic number, format version, CRC32 of the XML file, number of variables
+ *  2. for every variable in the order of the ids: name, number of outcomes, outcomes
+ *  3. for every variable in the order of the ids: number of parents, parent ids,
+ *     number of entries in the table, the entries (raw doubles, -1 entries if the variable has no table)
+ * a string is written as its length in bytes and then its UTF-8 bytes.
+ */
+public class NetworkSnapshot {
+
+    // "BNSN"
+    private static final int MAGIC = 0x424E534E;
+    private static final int VERSION = 1;
+
+    // the extension of the snapshot file that is created next to the XML file
+    public static final String EXTENSION = ".bnsnap";
+
+    /**
+     * This method loads the network from the snapshot of the XML file if there is a valid one,
+     * otherwise it reads the XML file and creates the snapshot for the next time
+     * @param bn the Bayesian Network
+     * @param xmlFile the name of the XML file
+     */
+    public static void loadOrCreate(BayesianNetwork bn, String xmlFile) {
+        String snapshotFile = xmlFile + EXTENSION;
+        try {
+            if (new File(snapshotFile).exists()) {
+                load(bn, xmlFile, snapshotFile);
+                return;
+            }
+        } catch (IOException e) {
+            // the snapshot is out of date or damaged, read the XML file again
+        }
+        XmlReader.createBayesianNetwork(bn, xmlFile);
+        try {
+            write(bn, xmlFile, snapshotFile);
+        } catch (IOException e) {
+            // we can still answer the queries without a snapshot
+        }
+    }
+
+    /**
+     * This method writes a snapshot of a network
+     * @param bn the Bayesian Network (read from the XML file)
+     * @param xmlFile the name of the XML file the network was read from
+     * @param snapshotFile the name of the snapshot file
+     * @throws IOException if the files cannot be read or written
+     */
+    public static void write(BayesianNetwork bn, String xmlFile, String snapshotFile) throws IOException {
+        Variable[] vars = byId(bn);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(checksum(xmlFile));
+            out.writeInt(vars.length);
+
+            // the variables and their outcomes
+            for (Variable v : vars) {
+                writeString(out, v.getName());
+                out.writeInt(v.getOutcomes().size());
+                for (String outcome : v.getOutcomes()) {
+                    writeString(out, outcome);
+                }
+            }
+
+            // the parents and the tables
+            for (Variable v : vars) {
+                CPT cpt = v.getProbabilityTable();
+                List<Variable> parents = cpt != null ? cpt.getParents() : v.getParents();
+                out.writeInt(parents.size());
+                for (Variable parent : parents) {
+                    out.writeInt(parent.getId());
+                }
+                if (cpt == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                double[] table = cpt.getProbabilities();
+                out.writeInt(table.length);
+                for (double d : table) {
+                    out.writeDouble(d);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method loads a network from a snapshot
+     * the children of every variable are in the order of their ids
+     * @param bn an empty Bayesian Network to load into
+     * @param xmlFile the name of the XML file the snapshot was created from
+     * @param snapshotFile the name of the snapshot file
+     * @throws IOException if the snapshot cannot be read, is damaged, or the XML file changed since it was created
+     */
+    public static void load(BayesianNetwork bn, String xmlFile, String snapshotFile) throws IOException {
+        long checksum = checksum(xmlFile);
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshotFile), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != MAGIC) throw new IOException("Not a network snapshot: " + snapshotFile);
+                if (buffer.getInt() != VERSION) throw new IOException("Unsupported snapshot version: " + snapshotFile);
+                if (buffer.getLong() != checksum) throw new IOException("The snapshot does not match " + xmlFile);
+
+                // the variables and their outcomes
+                Variable[] vars = new Variable[buffer.getInt()];
+                for (int i = 0; i < vars.length; i++) {
+                    vars[i] = new Variable(readString(buffer));
+                    List<String> outcomes = new ArrayList<>();
+                    int numOfOutcomes = buffer.getInt();
+                    for (int j = 0; j < numOfOutcomes; j++) {
+                        outcomes.add(readString(buffer));
+                    }
+                    vars[i].setOutcomes(outcomes);
+                }
+
+                // the parents and the tables
+                for (Variable v : vars) {
+                    ArrayList<Variable> parents = new ArrayList<>();
+                    int numOfParents = buffer.getInt();
+                    for (int j = 0; j < numOfParents; j++) {
+                        Variable parent = vars[buffer.getInt()];
+                        parents.add(parent);
+                        v.addParent(parent);
+                    }
+                    int tableLength = buffer.getInt();
+                    if (tableLength >= 0) {
+                        double[] table = new double[tableLength];
+                        buffer.asDoubleBuffer().get(table);
+                        buffer.position(buffer.position() + tableLength * Double.BYTES);
+                        v.setProbabilities(new CPT(v, parents, table));
+                    }
+                }
+
+                // the network is changed only once the whole snapshot was read
+                for (Variable v : vars) {
+                    bn.addVariable(v);
+                }
+            } catch (RuntimeException e) {
+                // a truncated or damaged file
+                throw new IOException("Damaged snapshot: " + snapshotFile, e);
+            }
+        }
+    }
+
+    /**
+     * @param bn the Bayesian Network
+     * @return the variables of the network, indexed by their ids
+     */
+    private static Variable[] byId(BayesianNetwork bn) {
+        Variable[] vars = new Variable[bn.size()];
+        for (Variable v : bn.getVariables().values()) {
+            vars[v.getId()] = v;
+        }
+        return vars;
+    }
+
+    /**
+     * @param filename the name of a file
+     * @return the CRC32 checksum of the content of the file
+     */
+    private static long checksum(String filename) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(Paths.get(filename)));
+        return crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package src;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * ParallelSampler.java
+ * This class draws the samples of likelihood weighting (see Sampling) with all the threads of a fork-join pool.
+ *
+ * The sample budget is cut into blocks of a fixed size. Every block has its own random numbers
+ * (split from the seed in the order of the blocks) and its own counts, so the threads never share mutable state.
+ * The blocks are drawn in rounds; after every round their counts are merged in the order of the blocks,
+ * and the sampling stops early once the confidence interval is narrow enough.
+ * Since the blocks and their order do not depend on the number of threads,
+ * the same seed gives the same answer with any pool.
+ */
+public class ParallelSampler {
+
+    // the number of samples of a block
+    public static final int BLOCK_SIZE = 2048;
+    // the number of blocks of a round: the interval is checked after every round
+    public static final int BLOCKS_PER_ROUND = 32;
+
+    /**
+     * Estimate the posterior of a variable with likelihood weighting, using the common fork-join pool
+     * @see #likelihoodWeighting(ForkJoinPool, BayesianNetwork, Variable, Map, int, long, double)
+     */
+    public static Sampling.Estimate likelihoodWeighting(BayesianNetwork bn, Variable queryVar, Map<String, String> evidence,
+                                                        int maxSamples, long seed, double targetHalfWidth) {
+        return likelihoodWeighting(ForkJoinPool.commonPool(), bn, queryVar, evidence, maxSamples, seed, targetHalfWidth);
+    }
+
+    /**
+     * Estimate the posterior of a variable with likelihood weighting, using the threads of a pool
+     * @param pool the pool to draw the samples with
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables and their values
+     * @param maxSamples the largest number of samples to draw
+     * @param seed the seed of the random numbers
+     * @param targetHalfWidth stop once the half width of the interval of every outcome is at most this (0 to draw all the samples)
+     * @return the estimated posterior
+     */
+    public static Sampling.Estimate likelihoodWeighting(ForkJoinPool pool, BayesianNetwork bn, Variable queryVar, Map<String, String> evidence,
+                                                        int maxSamples, long seed, double targetHalfWidth) {
+        Variable[] vars = Sampling.relevantVariables(bn, queryVar, evidence);
+        int[] observed = Sampling.evidenceOutcomes(bn, evidence);
+        int numOfOutcomes = queryVar.getOutcomes().size();
+        int numOfVariables = bn.size();
+
+        SplittableRandom random = new SplittableRandom(seed);
+        Sampling.WeightedCounts total = new Sampling.WeightedCounts(numOfOutcomes);
+        Sampling.Estimate estimate = total.estimate(queryVar);
+        int drawn = 0;
+        while (drawn < maxSamples) {
+            // the blocks of the next round
+            List<Callable<Sampling.WeightedCounts>> blocks = new ArrayList<>();
+            for (int b = 0; b < BLOCKS_PER_ROUND && drawn < maxSamples; b++) {
+                int size = Math.min(BLOCK_SIZE, maxSamples - drawn);
+                SplittableRandom blockRandom = random.split();
+                blocks.add(() -> {
+                    Sampling.WeightedCounts counts = new Sampling.WeightedCounts(numOfOutcomes);
+                    counts.sample(vars, observed, queryVar, new int[numOfVariables], size, blockRandom);
+                    return counts;
+                });
+                drawn += size;
+            }
+
+            // merge the counts in the order of the blocks
+            for (Future<Sampling.WeightedCounts> block : pool.invokeAll(blocks)) {
+                try {
+                    total.add(block.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            estimate = total.estimate(queryVar);
+            if (targetHalfWidth > 0 && estimate.getMaxHalfWidth() <= targetHalfWidth) {
+                break;
+            }
+        }
+        return estimate;
+    }
+}
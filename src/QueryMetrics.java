@@ -0,0 +1,234 @@
+package src;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+/**
+ * QueryMetrics.java
+ * The measurements of a single query, to find the queries that take long or build large factors.
+ * A query fills its own metrics object, so queries on different threads never share one.
+ *
+ * The metrics contain:
+ *  1. the parse time (reading the query text), the pruning time (compiling the plan: removing the irrelevant
+ *     variables and ordering the hidden ones, 0 if the plan was in the cache) and the wall time of the whole query
+ *  2. the number of factors created (the factors of the variables and the results of the joins and sum-outs),
+ *     the number of joins and of sum-outs, and the largest factor (number of entries and of variables)
+ *  3. the number of additions and multiplications of the query (the counts in the answer of Variable Elimination)
+ *  4. the bytes allocated by the thread during the query (-1 if the JVM cannot measure it)
+ * The metrics can be written as one line of JSON.
+ */
+public class QueryMetrics {
+
+    // the bean that measures the bytes allocated by a thread, or null if the JVM does not have one
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    private String query;
+    private String answer;
+    private long startNanos;
+    private long parseNanos;
+    private long pruningNanos;
+    private long wallNanos;
+    private boolean planCached;
+    private long startBytes;
+    private long allocatedBytes = -1;
+    private int factorsCreated;
+    private int joins;
+    private int sumOuts;
+    private long largestFactorEntries;
+    private int largestFactorVariables;
+    private int numOfAdditions;
+    private int numOfMultiplications;
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+                if (allocations.isThreadAllocatedMemorySupported()) {
+                    allocations.setThreadAllocatedMemoryEnabled(true);
+                    return allocations;
+                }
+            }
+        } catch (RuntimeException | LinkageError e) {
+            // the JVM does not support measuring allocations, the bytes stay -1
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of bytes the current thread allocated so far, or -1 if it cannot be measured
+     */
+    private static long threadAllocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Start measuring a query
+     * @param query the query
+     */
+    public void begin(String query) {
+        this.query = query;
+        startBytes = threadAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * The query text was parsed
+     */
+    public void parsed() {
+        parseNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * The plan of the query was found
+     * @param cached true if the plan was in the cache
+     * @param nanos the time it took to compile the plan (0 if it was in the cache)
+     */
+    public void planned(boolean cached, long nanos) {
+        planCached = cached;
+        pruningNanos = nanos;
+    }
+
+    /**
+     * A factor was created
+     * @param f the factor
+     */
+    public void factorCreated(Factor f) {
+        factorsCreated++;
+        if (f.size() > largestFactorEntries) {
+            largestFactorEntries = f.size();
+        }
+        if (f.getVariables().size() > largestFactorVariables) {
+            largestFactorVariables = f.getVariables().size();
+        }
+    }
+
+    /**
+     * Two factors were joined
+     * @param result the product of the factors
+     */
+    public void joined(Factor result) {
+        joins++;
+        factorCreated(result);
+    }
+
+    /**
+     * A variable was summed out of a factor
+     * @param result the factor without the variable
+     */
+    public void summedOut(Factor result) {
+        sumOuts++;
+        factorCreated(result);
+    }
+
+    /**
+     * Count additions of the query
+     * @param count the number of additions
+     */
+    public void addAdditions(int count) {
+        numOfAdditions += count;
+    }
+
+    /**
+     * Count multiplications of the query
+     * @param count the number of multiplications
+     */
+    public void addMultiplications(int count) {
+        numOfMultiplications += count;
+    }
+
+    /**
+     * Stop measuring the query
+     * @param answer the answer of the query
+     */
+    public void end(String answer) {
+        wallNanos = System.nanoTime() - startNanos;
+        long bytes = threadAllocatedBytes();
+        allocatedBytes = bytes < 0 || startBytes < 0 ? -1 : bytes - startBytes;
+        this.answer = answer;
+    }
+
+    /**
+     * Getters
+     */
+    public String getQuery() {
+        return query;
+    }
+    public String getAnswer() {
+        return answer;
+    }
+    public long getParseNanos() {
+        return parseNanos;
+    }
+    public long getPruningNanos() {
+        return pruningNanos;
+    }
+    public long getWallNanos() {
+        return wallNanos;
+    }
+    public boolean isPlanCached() {
+        return planCached;
+    }
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+    public int getFactorsCreated() {
+        return factorsCreated;
+    }
+    public int getJoins() {
+        return joins;
+    }
+    public int getSumOuts() {
+        return sumOuts;
+    }
+    public long getLargestFactorEntries() {
+        return largestFactorEntries;
+    }
+    public int getLargestFactorVariables() {
+        return largestFactorVariables;
+    }
+    public int getNumOfAdditions() {
+        return numOfAdditions;
+    }
+    public int getNumOfMultiplications() {
+        return numOfMultiplications;
+    }
+
+    /**
+     * @return the metrics as one line of JSON (the times are in microseconds)
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"query\":%s,\"answer\":%s,\"parseMicros\":%.1f,\"pruningMicros\":%.1f,\"wallMicros\":%.1f,"
+                        + "\"planCached\":%b,\"factorsCreated\":%d,\"joins\":%d,\"sumOuts\":%d,"
+                        + "\"largestFactorEntries\":%d,\"largestFactorVariables\":%d,"
+                        + "\"additions\":%d,\"multiplications\":%d,\"allocatedBytes\":%d}",
+                quote(query), quote(answer), parseNanos / 1000.0, pruningNanos / 1000.0, wallNanos / 1000.0,
+                planCached, factorsCreated, joins, sumOuts,
+                largestFactorEntries, largestFactorVariables, numOfAdditions, numOfMultiplications, allocatedBytes);
+    }
+
+    /**
+     * @return the string as a JSON string, or null
+     */
+    private static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
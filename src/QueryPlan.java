@@ -0,0 +1,176 @@
+package src;
+
+import java.util.*;
+
+/**
+ * QueryPlan.java
+ * A compiled Variable Elimination query.
+ * The relevant variables and the order of elimination of a query depend only on its shape:
+ * the query variable, the names of the evidence variables and the hidden variables part of the query.
+ * A plan stores them so queries of the same shape with different values only need to do the arithmetic.
+ *
+ * A plan contains:
+ *  1. the variables whose factors take part in the query (after the pruning of irrelevant variables
+ *     and of factors that become a single number once the evidence is eliminated)
+ *  2. the schedule - the hidden variables in the order they should be eliminated,
+ *     without the ones that do not appear in any of the factors
+ *  3. the predicted size of the largest factor of the query, computed from the cardinalities of the variables,
+ *     so a query that would build a huge factor can be rejected before it allocates anything
+ */
+public class QueryPlan {
+    private final Variable queryVar;
+    private final List<Variable> factorVars;
+    private final List<Variable> schedule;
+    private final long maxFactorSize;
+
+    private QueryPlan(Variable queryVar, List<Variable> factorVars, List<Variable> schedule, long maxFactorSize) {
+        this.queryVar = queryVar;
+        this.factorVars = factorVars;
+        this.schedule = schedule;
+        this.maxFactorSize = maxFactorSize;
+    }
+
+    /**
+     * Getters
+     */
+    public Variable getQueryVar() {
+        return queryVar;
+    }
+    public List<Variable> getFactorVars() {
+        return factorVars;
+    }
+    public List<Variable> getSchedule() {
+        return schedule;
+    }
+    public long getMaxFactorSize() {
+        return maxFactorSize;
+    }
+
+    /**
+     * Compute the key of the plan of a query
+     * @param queryVarName the name of the query variable
+     * @param evidenceNames the names of the evidence variables
+     * @param hiddenString the part of the query after the closing bracket (may be null)
+     * @return the key of the plan
+     */
+    public static String key(String queryVarName, Set<String> evidenceNames, String hiddenString) {
+        List<String> names = new ArrayList<>(evidenceNames);
+        Collections.sort(names);
+        return queryVarName + "|" + String.join(",", names) + ")" + (hiddenString == null ? "" : hiddenString.trim());
+    }
+
+    /**
+     * Compile a plan for a query
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables and their values (only the names matter for the plan)
+     * @param hiddenString the part of the query after the closing bracket: the hidden variables, AUTO or null
+     * @return the plan
+     */
+    public static QueryPlan compile(BayesianNetwork bn, Variable queryVar, HashMap<String, String> evidence, String hiddenString) {
+        // the explicit order of elimination given in the query
+        List<Variable> hiddenVars = new ArrayList<>();
+        if (hiddenString != null && !VariableElimination.isAuto(hiddenString)) {
+            String[] hidden = hiddenString.substring(1).split("-");
+            for (String h : hidden) {
+                hiddenVars.add(bn.getVariable(h));
+            }
+        }
+
+        // add only the relevant variables to the list
+        List<Variable> vars = new ArrayList<>();
+        VariableElimination.addAncestors(bn, queryVar, evidence, vars);
+        VariableElimination.removeIndependentVars(bn, queryVar, evidence, vars);
+
+        // keep the variables whose factors are not a single number once the evidence is eliminated
+        List<Variable> factorVars = new ArrayList<>();
+        List<Factor> factors = new ArrayList<>();
+        Set<Variable> scope = new HashSet<>();
+        for (Variable v : vars) {
+            Factor f = new Factor(v, evidence);
+            if (f.size() > 1) {
+                factorVars.add(v);
+                factors.add(f);
+                scope.addAll(f.getVariables());
+            }
+        }
+
+        // let the planner choose the order of elimination
+        if (hiddenString != null && VariableElimination.isAuto(hiddenString)) {
+            EliminationOrder.Heuristic heuristic = VariableElimination.parseHeuristic(hiddenString);
+            hiddenVars = EliminationOrder.compute(factors, queryVar, heuristic).getOrder();
+        }
+
+        // a hidden variable that is not in any factor is never joined or summed out
+        List<Variable> schedule = new ArrayList<>();
+        for (Variable h : hiddenVars) {
+            if (scope.contains(h)) {
+                schedule.add(h);
+            }
+        }
+        return new QueryPlan(queryVar, factorVars, schedule, predictMaxFactorSize(factors, schedule));
+    }
+
+    /**
+     * Predict the size of the largest factor Variable Elimination builds, from the variables of the factors only.
+     * Eliminating a hidden variable joins all the factors that contain it, and every product along the way
+     * is over a subset of the variables of the last one, so the largest is the product of all of them.
+     * At the end the remaining factors are joined in the same way.
+     * @param factors the factors of the query
+     * @param schedule the hidden variables in the order they are eliminated
+     * @return the predicted number of entries of the largest factor
+     */
+    static long predictMaxFactorSize(List<Factor> factors, List<Variable> schedule) {
+        // the variables of every factor
+        List<Set<Variable>> scopes = new ArrayList<>();
+        long max = 0;
+        for (Factor f : factors) {
+            scopes.add(new HashSet<>(f.getVariables()));
+            max = Math.max(max, f.size());
+        }
+
+        for (Variable h : schedule) {
+            // the product of the factors that contain the hidden variable
+            Set<Variable> product = new LinkedHashSet<>();
+            for (Iterator<Set<Variable>> it = scopes.iterator(); it.hasNext(); ) {
+                Set<Variable> scope = it.next();
+                if (scope.contains(h)) {
+                    product.addAll(scope);
+                    it.remove();
+                }
+            }
+            if (product.isEmpty()) continue;
+            max = Math.max(max, Factor.predictSize(product));
+
+            // the hidden variable is summed out, and a factor with a single entry is dropped
+            product.remove(h);
+            if (Factor.predictSize(product) > 1) {
+                scopes.add(product);
+            }
+        }
+
+        // the join of the remaining factors
+        if (scopes.size() > 1) {
+            Set<Variable> product = new HashSet<>();
+            for (Set<Variable> scope : scopes) {
+                product.addAll(scope);
+            }
+            max = Math.max(max, Factor.predictSize(product));
+        }
+        return max;
+    }
+
+    /**
+     * Create the factors of the query for the given evidence values
+     * every factor is created as the slice of its CPT that is consistent with the evidence
+     * @param evidence the evidence variables and their values
+     * @return the list of factors, with the evidence eliminated from them
+     */
+    public List<Factor> createFactors(Map<String, String> evidence) {
+        List<Factor> factors = new ArrayList<>(factorVars.size());
+        for (Variable v : factorVars) {
+            factors.add(new Factor(v, evidence));
+        }
+        return factors;
+    }
+}
@@ -0,0 +1,84 @@
+package src;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * QueryPlanCache.java
+ * A bounded cache of compiled query plans.
+ * When the cache is full, the plan that was used least recently is evicted.
+ * The cache counts hits and misses so we can see how well the query shapes repeat.
+ */
+public class QueryPlanCache {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final LinkedHashMap<String, QueryPlan> plans;
+    private long hits;
+    private long misses;
+
+    /**
+     * Constructor
+     * @param capacity the maximum number of plans in the cache
+     */
+    public QueryPlanCache(int capacity) {
+        this.capacity = capacity;
+        // access order makes the iteration order least recently used first
+        this.plans = new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+                return size() > QueryPlanCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get a plan from the cache
+     * @param key the key of the plan
+     * @return the plan, or null if it is not in the cache
+     */
+    public synchronized QueryPlan get(String key) {
+        QueryPlan plan = plans.get(key);
+        if (plan == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return plan;
+    }
+
+    /**
+     * Add a plan to the cache
+     * @param key the key of the plan
+     * @param plan the plan
+     */
+    public synchronized void put(String key, QueryPlan plan) {
+        plans.put(key, plan);
+    }
+
+    /**
+     * Remove all the plans and reset the counters
+     */
+    public synchronized void clear() {
+        plans.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Getters
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+    public synchronized long getMisses() {
+        return misses;
+    }
+    public synchronized int size() {
+        return plans.size();
+    }
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,313 @@
+package src;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * QueryServer.java
+ * A long running server that loads the networks once and answers queries with them,
+ * so the queries do not pay for starting the JVM, parsing the XML files and warming up the JIT every time.
+ *
+ * The server reads one request per line and writes one line for every request:
+ *  1. a query - a Bayes Ball query or a P(...) query, answered with Ex1.processQuery
+ *     (the same rules and the same answers as the lines of an input file of Ex1)
+ *  2. USE network - answer the next queries of this session with another loaded network (the XML file name as given)
+ *  3. STATS - the number of queries answered, the throughput and the latency percentiles of the server
+ *  4. QUIT - end the session (no answer)
+ * A query that fails is answered with a line that starts with "error:". Empty lines are ignored.
+ * The first network that was loaded answers the queries until USE is sent.
+ *
+ * The server can talk over stdin/stdout (one session), or listen on a port of the loopback address
+ * (one session per connection, every connection has its own thread).
+ *
+ * Usage: java src.QueryServer [--port=n] [--engine=ve|jt] [--snapshot] [--max-factor-size=n] [--log-space] network1.xml [network2.xml ...]
+ * without --port the server answers the lines of stdin. --port=0 listens on a free port (the port is printed).
+ */
+public class QueryServer implements Closeable {
+
+    public static final String USE = "USE";
+    public static final String STATS = "STATS";
+    public static final String QUIT = "QUIT";
+
+    // the networks of the server by the name of their XML file, in the order they were loaded
+    private final Map<String, BayesianNetwork> networks = new LinkedHashMap<>();
+    // the engine that answers the probability queries (Ex1.ENGINE_VE or Ex1.ENGINE_JT)
+    private final String engine;
+    private final Stats stats = new Stats();
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessions;
+
+    /**
+     * Constructor
+     * @param engine the engine that answers the probability queries (Ex1.ENGINE_VE or Ex1.ENGINE_JT)
+     */
+    public QueryServer(String engine) {
+        if (!engine.equals(Ex1.ENGINE_VE) && !engine.equals(Ex1.ENGINE_JT)) {
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        }
+        this.engine = engine;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = -1;
+        String engine = Ex1.ENGINE_VE;
+        boolean useSnapshot = false;
+        long maxFactorSize = Factor.MAX_TABLE_SIZE;
+        boolean logSpace = false;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.equals("--snapshot")) {
+                useSnapshot = true;
+            } else if (arg.equals("--log-space")) {
+                logSpace = true;
+            } else if (arg.startsWith("--max-factor-size=")) {
+                maxFactorSize = Long.parseLong(arg.substring("--max-factor-size=".length()));
+            } else {
+                files.add(arg);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java src.QueryServer [--port=n] [--engine=ve|jt] [--snapshot] [--max-factor-size=n] [--log-space] network1.xml [network2.xml ...]");
+            return;
+        }
+
+        QueryServer server = new QueryServer(engine);
+        for (String file : files) {
+            BayesianNetwork bn = server.load(file, useSnapshot);
+            bn.setMaxFactorSize(maxFactorSize);
+            bn.setLogSpace(logSpace);
+        }
+
+        if (port < 0) {
+            // one session over stdin and stdout, then the statistics on stderr
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            server.serve(in, out);
+            System.err.println(server.getStats());
+            return;
+        }
+
+        // listen until the process is stopped, and print the statistics when it is
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(server.getStats())));
+        int bound = server.listen(port);
+        System.out.println("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + bound);
+    }
+
+    /**
+     * Load a network and keep it in memory
+     * @param xmlFile the name of the XML file of the network (also the name of the network in USE requests)
+     * @param useSnapshot load the network from a binary snapshot of the XML file (see NetworkSnapshot)
+     * @return the network
+     */
+    public synchronized BayesianNetwork load(String xmlFile, boolean useSnapshot) {
+        BayesianNetwork bn = new BayesianNetwork();
+        if (useSnapshot) {
+            NetworkSnapshot.loadOrCreate(bn, xmlFile);
+        } else {
+            XmlReader.createBayesianNetwork(bn, xmlFile);
+        }
+        networks.put(xmlFile, bn);
+        return bn;
+    }
+
+    /**
+     * @param name the name of a loaded network, or null for the first one
+     * @return the network, or null if there is no such network
+     */
+    public synchronized BayesianNetwork getNetwork(String name) {
+        if (name == null) {
+            return networks.isEmpty() ? null : networks.values().iterator().next();
+        }
+        return networks.get(name);
+    }
+
+    /**
+     * @return the statistics of the queries the server answered
+     */
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * Answer a query with a network and record its latency
+     * @param bn the network
+     * @param query the query
+     * @return the answer, or a line that starts with "error:" if the query failed
+     */
+    public String answer(BayesianNetwork bn, String query) {
+        long start = System.nanoTime();
+        String answer;
+        try {
+            answer = Ex1.processQuery(bn, query, engine);
+        } catch (RuntimeException e) {
+            answer = "error: " + (e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+        stats.record(start, System.nanoTime());
+        return answer;
+    }
+
+    /**
+     * Answer the requests of one session until QUIT or the end of the input
+     * @param in the requests, one per line
+     * @param out the answers, one line per request
+     */
+    public void serve(BufferedReader in, BufferedWriter out) throws IOException {
+        BayesianNetwork bn = getNetwork(null);
+        String line;
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (line.equals(QUIT)) {
+                break;
+            }
+            if (line.equals(STATS)) {
+                out.write(stats.toString());
+            } else if (line.startsWith(USE + " ")) {
+                String name = line.substring(USE.length()).trim();
+                BayesianNetwork other = getNetwork(name);
+                if (other == null) {
+                    out.write("error: unknown network " + name);
+                } else {
+                    bn = other;
+                    out.write("ok");
+                }
+            } else if (bn == null) {
+                out.write("error: no network is loaded");
+            } else {
+                out.write(answer(bn, line));
+            }
+            out.newLine();
+            out.flush();
+        }
+        out.flush();
+    }
+
+    /**
+     * Start listening on a port of the loopback address, and answer every connection in its own thread
+     * @param port the port, or 0 for a free port
+     * @return the port the server listens on
+     */
+    public synchronized int listen(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("The server is already listening on port " + serverSocket.getLocalPort());
+        }
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        sessions = Executors.newCachedThreadPool();
+        ServerSocket socket = serverSocket;
+        ExecutorService pool = sessions;
+        Thread acceptor = new Thread(() -> {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    pool.execute(() -> session(client));
+                } catch (IOException e) {
+                    // the server socket was closed
+                }
+            }
+        }, "QueryServer-accept");
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Answer the requests of a connection and close it
+     */
+    private void session(Socket client) {
+        try (Socket c = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(c.getOutputStream(), StandardCharsets.UTF_8))) {
+            serve(in, out);
+        } catch (IOException e) {
+            // the client went away
+        }
+    }
+
+    /**
+     * Stop listening and close the connections
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+            sessions.shutdownNow();
+            serverSocket = null;
+            sessions = null;
+        }
+    }
+
+    /**
+     * The statistics of the queries of a server: the number of queries, the throughput and the latency percentiles.
+     * The throughput is the number of queries over the time from the start of the first query to the end of the last one.
+     * The percentiles are computed from the latencies of the last LATENCY_WINDOW queries.
+     */
+    public static class Stats {
+        public static final int LATENCY_WINDOW = 100000;
+
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private long count;
+        private long firstStart;
+        private long lastEnd;
+
+        /**
+         * Record a query
+         * @param start the System.nanoTime() when the query started
+         * @param end the System.nanoTime() when the query ended
+         */
+        public synchronized void record(long start, long end) {
+            if (count == 0 || start - firstStart < 0) {
+                firstStart = start;
+            }
+            if (count == 0 || end - lastEnd > 0) {
+                lastEnd = end;
+            }
+            latencies[(int) (count % LATENCY_WINDOW)] = end - start;
+            count++;
+        }
+
+        /**
+         * Getters
+         */
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the number of queries per second
+         */
+        public synchronized double getThroughput() {
+            long elapsed = lastEnd - firstStart;
+            return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+        }
+
+        /**
+         * @param p the percentile (between 0 and 100)
+         * @return the latency of the percentile in nanoseconds (0 if there were no queries)
+         */
+        public synchronized long getLatencyPercentile(double p) {
+            int n = (int) Math.min(count, LATENCY_WINDOW);
+            if (n == 0) return 0;
+            long[] sorted = Arrays.copyOf(latencies, n);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p / 100 * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.ROOT, "queries=%d throughput=%.1f/s p50=%.1fus p99=%.1fus max=%.1fus",
+                    count, getThroughput(), getLatencyPercentile(50) / 1000.0,
+                    getLatencyPercentile(99) / 1000.0, getLatencyPercentile(100) / 1000.0);
+        }
+    }
+}
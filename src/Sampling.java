@@ -0,0 +1,450 @@
+package src;
+
+import java.util.*;
+
+/**
+ * Sampling.java
+ * This class implements approximate inference by sampling, for networks that are too large for exact elimination:
+ *  1. Likelihood Weighting - every sample sets the variables in topological order: the evidence variables get their
+ *     observed values, and the other variables are drawn from their CPT given the values of their parents.
+ *     the weight of the sample is the product of the probabilities of the evidence given their parents.
+ *  2. Gibbs Sampling - a Markov chain over the hidden variables: at every step one variable is drawn again
+ *     from its distribution given its Markov blanket (its parents, its children and the other parents of its children).
+ *
+ * Only the query variable, the evidence variables and their ancestors are sampled:
+ * the other variables are barren and do not change the answer.
+ *
+ * The query is of the form P(Q=q|E1=e1, E2=e2, …, Ek=ek) METHOD[:samples[:seed]]
+ * where METHOD is LW or GIBBS, for example P(B=T|J=T,M=T) LW:100000:7
+ * or PLW[:samples[:seed[:half width]]] to draw the samples of likelihood weighting with all the cores (see ParallelSampler)
+ * and stop once the confidence interval is narrow enough.
+ * the same seed always gives the same answer.
+ */
+public class Sampling {
+
+    // the keywords that select the sampling engines instead of the hidden variables of the query
+    public static final String LIKELIHOOD_WEIGHTING = "LW";
+    public static final String GIBBS = "GIBBS";
+    public static final String PARALLEL_LIKELIHOOD_WEIGHTING = "PLW";
+
+    public static final int DEFAULT_SAMPLES = 10000;
+    public static final long DEFAULT_SEED = 1;
+
+    // the z value of a 95% confidence interval
+    private static final double Z = 1.96;
+    // the number of batches of the batch means estimate of the interval of Gibbs sampling
+    private static final int BATCHES = 20;
+
+    /**
+     * The estimated posterior of the query variable
+     * every probability has a 95% confidence interval of probability ± half width
+     */
+    public static class Estimate {
+        private final Variable variable;
+        private final double[] probabilities;
+        private final double[] halfWidths;
+        private final int numOfSamples;
+        // the arithmetic on the weights and the distributions, not the drawing of the random numbers
+        private final long numOfAdditions;
+        private final long numOfMultiplications;
+
+        public Estimate(Variable variable, double[] probabilities, double[] halfWidths, int numOfSamples,
+                        long numOfAdditions, long numOfMultiplications) {
+            this.variable = variable;
+            this.probabilities = probabilities;
+            this.halfWidths = halfWidths;
+            this.numOfSamples = numOfSamples;
+            this.numOfAdditions = numOfAdditions;
+            this.numOfMultiplications = numOfMultiplications;
+        }
+
+        /**
+         * Getters
+         */
+        public Variable getVariable() {
+            return variable;
+        }
+        public double[] getProbabilities() {
+            return probabilities;
+        }
+        public double[] getHalfWidths() {
+            return halfWidths;
+        }
+        public int getNumOfSamples() {
+            return numOfSamples;
+        }
+        public long getNumOfAdditions() {
+            return numOfAdditions;
+        }
+        public long getNumOfMultiplications() {
+            return numOfMultiplications;
+        }
+
+        /**
+         * @param outcome an outcome of the variable
+         * @return the estimated probability of the outcome, or 0 if the variable has no such outcome
+         */
+        public double getProbability(String outcome) {
+            int index = variable.getOutcomeIndex(outcome);
+            return index < 0 ? 0.0 : probabilities[index];
+        }
+
+        /**
+         * @return the lower and upper bounds of the confidence interval of an outcome
+         */
+        public double getLowerBound(int outcome) {
+            return Math.max(0.0, probabilities[outcome] - halfWidths[outcome]);
+        }
+        public double getUpperBound(int outcome) {
+            return Math.min(1.0, probabilities[outcome] + halfWidths[outcome]);
+        }
+
+        /**
+         * @return the largest half width of the intervals of the outcomes
+         */
+        public double getMaxHalfWidth() {
+            double max = 0;
+            for (double h : halfWidths) {
+                max = Math.max(max, h);
+            }
+            return max;
+        }
+
+        /**
+         * To String
+         */
+        public String toString() {
+            StringBuilder s = new StringBuilder(variable.getName() + " (" + numOfSamples + " samples):");
+            for (int i = 0; i < probabilities.length; i++) {
+                s.append(String.format(" %s=%.5f±%.5f", variable.getOutcomes().get(i), probabilities[i], halfWidths[i]));
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * @param hiddenString the part of the query after the closing bracket
+     * @return true if the query asks for one of the sampling engines
+     */
+    public static boolean isSampling(String hiddenString) {
+        if (hiddenString == null) {
+            return false;
+        }
+        String method = hiddenString.trim().split(":")[0];
+        return method.equals(LIKELIHOOD_WEIGHTING) || method.equals(GIBBS) || method.equals(PARALLEL_LIKELIHOOD_WEIGHTING);
+    }
+
+    /**
+     * This method answers a query of the form P(Q=q|E1=e1, E2=e2, …, Ek=ek) METHOD[:samples[:seed]] by sampling
+     * @param bn the Bayesian Network
+     * @param query the query
+     * @return the answer in the form probability,number of additions,number of multiplications
+     */
+    public static String processSamplingQuery(BayesianNetwork bn, String query) {
+        String[] queryParts = query.split("\\|");
+        String queryVarString = queryParts[0].substring(2);
+        String[] evidenceAndHidden = queryParts[1].split("\\)");
+        String evidenceString = evidenceAndHidden.length > 0 ? evidenceAndHidden[0] : "";
+        HashMap<String, String> evidence = BayesBall.parseEvidence(evidenceString);
+        String[] queryVar = queryVarString.split("=");
+
+        // the method, the number of samples, the seed and the target half width of the interval
+        String[] parts = evidenceAndHidden[1].trim().split(":");
+        int samples = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : DEFAULT_SAMPLES;
+        long seed = parts.length > 2 ? Long.parseLong(parts[2].trim()) : DEFAULT_SEED;
+        double halfWidth = parts.length > 3 ? Double.parseDouble(parts[3].trim()) : 0.0;
+
+        Variable q = bn.getVariable(queryVar[0]);
+        Estimate estimate;
+        if (parts[0].equals(GIBBS)) {
+            estimate = gibbs(bn, q, evidence, samples, seed);
+        } else if (parts[0].equals(PARALLEL_LIKELIHOOD_WEIGHTING)) {
+            estimate = ParallelSampler.likelihoodWeighting(bn, q, evidence, samples, seed, halfWidth);
+        } else {
+            estimate = likelihoodWeighting(bn, q, evidence, samples, seed);
+        }
+        double ans = estimate.getProbability(queryVar[1]);
+        return (Math.round(ans*100000.0)/100000.0) + "," + estimate.getNumOfAdditions() + "," + estimate.getNumOfMultiplications();
+    }
+
+    /**
+     * Estimate the posterior of a variable with likelihood weighting
+     * the interval uses the effective sample size of the weights: (sum of the weights)^2 / (sum of the squared weights)
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables and their values
+     * @param samples the number of samples
+     * @param seed the seed of the random numbers
+     * @return the estimated posterior (NaN if no sample is consistent with the evidence)
+     */
+    public static Estimate likelihoodWeighting(BayesianNetwork bn, Variable queryVar, Map<String, String> evidence, int samples, long seed) {
+        Variable[] vars = relevantVariables(bn, queryVar, evidence);
+        int[] observed = evidenceOutcomes(bn, evidence);
+        WeightedCounts counts = new WeightedCounts(queryVar.getOutcomes().size());
+        counts.sample(vars, observed, queryVar, new int[bn.size()], samples, new SplittableRandom(seed));
+        return counts.estimate(queryVar);
+    }
+
+    /**
+     * The sums of the weights of likelihood weighting samples.
+     * the counts of separate runs can be merged, so the samples can be drawn by several threads,
+     * each with its own counts and its own random numbers
+     */
+    static class WeightedCounts {
+        // the sum of the weights of the samples with every outcome of the query variable
+        final double[] weights;
+        double sumOfSquares;
+        int samples;
+        long additions;
+        long multiplications;
+
+        WeightedCounts(int numOfOutcomes) {
+            this.weights = new double[numOfOutcomes];
+        }
+
+        /**
+         * Draw samples and add their weights
+         * @param vars the variables to sample, in topological order
+         * @param observed the observed outcome index of every variable by id (-1 if it is not observed)
+         * @param queryVar the query variable
+         * @param assignment an array to hold the sample, one entry per variable id
+         * @param samples the number of samples
+         * @param random the random numbers
+         */
+        void sample(Variable[] vars, int[] observed, Variable queryVar, int[] assignment, int samples, SplittableRandom random) {
+            for (int s = 0; s < samples; s++) {
+                double w = 1.0;
+                for (Variable v : vars) {
+                    int id = v.getId();
+                    if (observed[id] >= 0) {
+                        assignment[id] = observed[id];
+                        w *= v.getProbability(assignment);
+                        multiplications++;
+                    } else {
+                        CPT cpt = v.getProbabilityTable();
+                        assignment[id] = draw(cpt.getProbabilities(), cpt.rowIndex(assignment), v.getOutcomes().size(), random.nextDouble());
+                    }
+                }
+                weights[assignment[queryVar.getId()]] += w;
+                sumOfSquares += w * w;
+                additions += 2;
+                multiplications++;
+            }
+            this.samples += samples;
+        }
+
+        /**
+         * Add the counts of another run
+         * @param other the counts of the other run
+         */
+        void add(WeightedCounts other) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] += other.weights[i];
+            }
+            sumOfSquares += other.sumOfSquares;
+            samples += other.samples;
+            additions += other.additions;
+            multiplications += other.multiplications;
+        }
+
+        /**
+         * Create the estimate of the samples so far
+         * the interval uses the effective sample size of the weights: (sum of the weights)^2 / (sum of the squared weights)
+         * @param queryVar the query variable
+         * @return the estimate
+         */
+        Estimate estimate(Variable queryVar) {
+            double total = 0;
+            for (double w : weights) {
+                total += w;
+            }
+            double effectiveSamples = total * total / sumOfSquares;
+            double[] probabilities = new double[weights.length];
+            double[] halfWidths = new double[weights.length];
+            for (int i = 0; i < weights.length; i++) {
+                probabilities[i] = weights[i] / total;
+                halfWidths[i] = Z * Math.sqrt(probabilities[i] * (1 - probabilities[i]) / effectiveSamples);
+            }
+            return new Estimate(queryVar, probabilities, halfWidths, samples, additions + weights.length - 1, multiplications);
+        }
+    }
+
+    /**
+     * Estimate the posterior of a variable with Gibbs sampling
+     * the first tenth of the steps (the burn-in) are not counted.
+     * the samples of a chain are not independent, so the interval is estimated from the spread of the answers
+     * of consecutive batches of samples (batch means)
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables and their values
+     * @param samples the number of counted steps (every step draws all the hidden variables once)
+     * @param seed the seed of the random numbers
+     * @return the estimated posterior
+     */
+    public static Estimate gibbs(BayesianNetwork bn, Variable queryVar, Map<String, String> evidence, int samples, long seed) {
+        Variable[] vars = relevantVariables(bn, queryVar, evidence);
+        int[] observed = evidenceOutcomes(bn, evidence);
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] assignment = new int[bn.size()];
+
+        // the hidden variables and their children among the sampled variables
+        BitSet relevant = new BitSet();
+        for (Variable v : vars) {
+            relevant.set(v.getId());
+        }
+        List<Variable> hidden = new ArrayList<>();
+        List<Variable[]> children = new ArrayList<>();
+        for (Variable v : vars) {
+            if (observed[v.getId()] < 0) {
+                hidden.add(v);
+                List<Variable> c = new ArrayList<>();
+                for (Variable child : v.getChildren()) {
+                    if (relevant.get(child.getId())) c.add(child);
+                }
+                children.add(c.toArray(new Variable[0]));
+            }
+        }
+
+        // start from a sample of the network with the evidence set
+        for (Variable v : vars) {
+            int id = v.getId();
+            if (observed[id] >= 0) {
+                assignment[id] = observed[id];
+            } else {
+                CPT cpt = v.getProbabilityTable();
+                assignment[id] = draw(cpt.getProbabilities(), cpt.rowIndex(assignment), v.getOutcomes().size(), random.nextDouble());
+            }
+        }
+
+        int numOfOutcomes = queryVar.getOutcomes().size();
+        int batches = Math.max(1, Math.min(BATCHES, samples));
+        int[][] batchCounts = new int[batches][numOfOutcomes];
+        int[] batchSizes = new int[batches];
+        int burnIn = samples / 10;
+        double[] distribution = new double[maxOutcomes(vars)];
+        long additions = 0;
+        long multiplications = 0;
+
+        for (int step = -burnIn; step < samples; step++) {
+            for (int h = 0; h < hidden.size(); h++) {
+                Variable v = hidden.get(h);
+                int id = v.getId();
+                int n = v.getOutcomes().size();
+                // the probability of every outcome given the Markov blanket, up to normalization
+                double sum = 0;
+                for (int k = 0; k < n; k++) {
+                    assignment[id] = k;
+                    double p = v.getProbability(assignment);
+                    for (Variable child : children.get(h)) {
+                        p *= child.getProbability(assignment);
+                    }
+                    distribution[k] = p;
+                    sum += p;
+                }
+                multiplications += (long) n * children.get(h).length;
+                additions += n - 1;
+                assignment[id] = sum > 0 ? drawNormalized(distribution, n, sum, random.nextDouble()) : random.nextInt(n);
+            }
+            if (step >= 0) {
+                int b = (int) ((long) step * batches / samples);
+                batchCounts[b][assignment[queryVar.getId()]]++;
+                batchSizes[b]++;
+            }
+        }
+
+        // the estimate and the batch means interval
+        double[] probabilities = new double[numOfOutcomes];
+        double[] halfWidths = new double[numOfOutcomes];
+        for (int i = 0; i < numOfOutcomes; i++) {
+            int count = 0;
+            for (int b = 0; b < batches; b++) {
+                count += batchCounts[b][i];
+            }
+            probabilities[i] = (double) count / samples;
+            double variance = 0;
+            for (int b = 0; b < batches; b++) {
+                double mean = (double) batchCounts[b][i] / batchSizes[b];
+                variance += (mean - probabilities[i]) * (mean - probabilities[i]);
+            }
+            halfWidths[i] = batches > 1 ? Z * Math.sqrt(variance / (batches - 1) / batches) : Double.NaN;
+        }
+        return new Estimate(queryVar, probabilities, halfWidths, samples, additions, multiplications);
+    }
+
+    /**
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables
+     * @return the query variable, the evidence variables and their ancestors, in topological order
+     */
+    static Variable[] relevantVariables(BayesianNetwork bn, Variable queryVar, Map<String, String> evidence) {
+        List<Variable> ancestors = new ArrayList<>();
+        VariableElimination.addAncestors(bn, queryVar, new HashMap<>(evidence), ancestors);
+        BitSet relevant = new BitSet();
+        for (Variable v : ancestors) {
+            if (v.getProbabilityTable() == null) {
+                throw new RuntimeException("Variable has no table: " + v.getName());
+            }
+            relevant.set(v.getId());
+        }
+        List<Variable> vars = new ArrayList<>();
+        for (Variable v : bn.getTopologicalOrder()) {
+            if (relevant.get(v.getId())) vars.add(v);
+        }
+        return vars.toArray(new Variable[0]);
+    }
+
+    /**
+     * @param bn the Bayesian Network
+     * @param evidence the evidence variables and their values
+     * @return the observed outcome index of every variable, indexed by the variable id (-1 if it is not observed)
+     */
+    static int[] evidenceOutcomes(BayesianNetwork bn, Map<String, String> evidence) {
+        int[] observed = new int[bn.size()];
+        Arrays.fill(observed, -1);
+        for (Map.Entry<String, String> e : evidence.entrySet()) {
+            Variable v = bn.getVariable(e.getKey());
+            observed[v.getId()] = v.getOutcomeIndex(e.getValue());
+            if (observed[v.getId()] < 0) {
+                throw new IllegalArgumentException("Unknown outcome " + e.getValue() + " of variable " + v.getName());
+            }
+        }
+        return observed;
+    }
+
+    /**
+     * Draw an outcome from a row of a table
+     * @param table the table
+     * @param from the position of the row
+     * @param n the number of outcomes
+     * @param u a uniform random number in [0, 1)
+     * @return the outcome index (the last outcome if the row sums to less than u)
+     */
+    static int draw(double[] table, int from, int n, double u) {
+        for (int k = 0; k < n - 1; k++) {
+            u -= table[from + k];
+            if (u < 0) {
+                return k;
+            }
+        }
+        return n - 1;
+    }
+
+    /**
+     * Draw an outcome from a distribution that is not normalized
+     */
+    private static int drawNormalized(double[] distribution, int n, double sum, double u) {
+        return draw(distribution, 0, n, u * sum);
+    }
+
+    /**
+     * @return the largest number of outcomes of the variables
+     */
+    private static int maxOutcomes(Variable[] vars) {
+        int max = 1;
+        for (Variable v : vars) {
+            max = Math.max(max, v.getOutcomes().size());
+        }
+        return max;
+    }
+}
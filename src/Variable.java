@@ -1,7 +1,9 @@
 package src;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Variable class
@@ -13,9 +15,11 @@ public class Variable {
     private final ArrayList<Variable> parents;
     private final ArrayList<Variable> children;
     private List<String> outcomes;
+    // maps each outcome to its position in the outcomes list, used to index the factor tables
+    private Map<String, Integer> outcomeIndex;
     private CPT CPT;
-    boolean isEvidence = false;
-    int observed = 0;
+    // the index of the variable in its network, used to keep per-query state in arrays and bit sets
+    private int id = -1;
 
     /**
      * Constructor
@@ -26,6 +30,7 @@ public class Variable {
         parents = new ArrayList<Variable>();
         children = new ArrayList<Variable>();
         outcomes = new ArrayList<String>();
+        outcomeIndex = new HashMap<String, Integer>();
         CPT = null;
     }
 
@@ -35,6 +40,9 @@ public class Variable {
     public String getName() {
         return name;
     }
+    public int getId() {
+        return id;
+    }
     public ArrayList<Variable> getParents() {
         return parents;
     }
@@ -48,11 +56,28 @@ public class Variable {
         return CPT;
     }
 
+    /**
+     * Get the index of an outcome of this variable
+     * @param outcome the outcome
+     * @return the index of the outcome in the outcomes list, or -1 if the variable has no such outcome
+     */
+    public int getOutcomeIndex(String outcome) {
+        Integer index = outcomeIndex.get(outcome);
+        return index == null ? -1 : index;
+    }
+
     /**
      * Setters
      */
+    public void setId(int id) {
+        this.id = id;
+    }
     public void setOutcomes(List<String> outcomes) {
         this.outcomes = outcomes;
+        this.outcomeIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            outcomeIndex.put(outcomes.get(i), i);
+        }
     }
     public void setProbabilities(CPT probabilities) {
         this.CPT = probabilities;
@@ -65,25 +90,6 @@ public class Variable {
         children.add(v);
     }
 
-    /**
-     * These are the methods used in the Bayes Ball algorithm
-     * each Bayes Ball query sets different variables to be evidence
-     * and during the Bayes Ball traversal, the variables are marked as observed
-     */
-    public void setEvidence(boolean isEvidence) {
-        this.isEvidence = isEvidence;
-    }
-    public boolean isEvidence() {
-        return isEvidence;
-    }
-    public void setObserved(int observed) {
-        this.observed = observed;
-    }
-    public int Observed() {
-        return observed;
-    }
-
-
     // Remove a parent from the variable
     public void removeParent(Variable v) {
         parents.remove(v);
@@ -93,6 +99,11 @@ public class Variable {
     public double getProbability(ArrayList<String> parentOutcomes) {
         return CPT.getProbability(parentOutcomes);
     }
+    // get the probability of the outcome of the variable in an assignment of the whole network (indexed by variable id)
+    // given the outcomes of its parents in the assignment
+    public double getProbability(int[] assignment) {
+        return CPT.getProbability(assignment);
+    }
 
 
 
@@ -12,8 +12,9 @@ import java.util.*;
 
 public class VariableElimination {
 
-    public static int NumOfAdditions;
-    public static int NumOfMultiplications;
+    // a query that ends with this keyword instead of the hidden variables lets the planner choose the order
+    // the heuristic can be given after a colon, e.g. AUTO:min-degree (the default is min-fill)
+    public static final String AUTO = "AUTO";
 
 
     /**
@@ -23,13 +24,38 @@ public class VariableElimination {
      * E1, E2, …, Ek are the evidence variables,
      * q, e1, e2, …, ek are the values of the query and evidence variables,
      * and H1, H2, …, Hj are the hidden variables. in the order they should be eliminated
+     * instead of the hidden variables, the query can end with AUTO (or AUTO:heuristic)
+     * and the order is computed by EliminationOrder
      *
      * @param bn the Bayesian Network
      * @param query the query
+     * @param writer the writer to write the answer to
      */
     public static void processVariableEliminationQuery(BayesianNetwork bn , String query, BufferedWriter writer) throws IOException {
-        NumOfAdditions = 0;
-        NumOfMultiplications = 0;
+        writer.write(processVariableEliminationQuery(bn, query));
+    }
+
+    /**
+     * This method processes a query using the Variable Elimination algorithm (see above)
+     * @param bn the Bayesian Network
+     * @param query the query
+     * @return the answer in the form probability,number of additions,number of multiplications
+     */
+    public static String processVariableEliminationQuery(BayesianNetwork bn , String query) {
+        return processVariableEliminationQuery(bn, query, new QueryMetrics());
+    }
+
+    /**
+     * This method processes a query using the Variable Elimination algorithm (see above) and measures it
+     * @param bn the Bayesian Network
+     * @param query the query
+     * @param metrics the metrics to fill: the times, the factors, the additions and multiplications and the allocations of the query
+     * @return the answer in the form probability,number of additions,number of multiplications
+     */
+    public static String processVariableEliminationQuery(BayesianNetwork bn , String query, QueryMetrics metrics) {
+        // the additions and multiplications are counted in the metrics of this query,
+        // so queries can be processed concurrently
+        metrics.begin(query);
 
         // parse the query int the different parts
         String[] queryParts = query.split("\\|");
@@ -38,68 +64,149 @@ public class VariableElimination {
         String evidenceString = evidenceAndHidden.length > 0 ? evidenceAndHidden[0] : "";
         String hiddenString = evidenceAndHidden.length > 1 ? evidenceAndHidden[1] : null;
 
-
-
-        // create a list of the hidden variables in the same order they should be eliminated
-        List<Variable> hiddenVars = new ArrayList<>();
-        if(hiddenString != null) {
-            String[] hidden = hiddenString.substring(1).split("-");
-            for (String h : hidden) {
-                hiddenVars.add(bn.getVariable(h));
-            }
-        }
-
         // get a map of the evidence variables and their values
         HashMap<String, String> evidence = BayesBall.parseEvidence(evidenceString);
 
         // get the query variable
         String varName = queryVarString.split("=")[0];
-        Variable queryVar = bn.getVariable(varName);
-
-        // create a list of the variables in the network to make into factors
-        List<Variable> vars = new ArrayList<>();
-
-        // add only the relevant variables to the list
-        addAncestors(bn, queryVar, evidence, vars);
-        removeIndependentVars(bn, queryVar, evidence, vars);
+        metrics.parsed();
+
+        // get the plan of the query from the cache, or compile it if this is the first query of this shape
+        // the plan holds the relevant variables and the order of elimination of the hidden variables
+        QueryPlanCache cache = bn.getPlanCache();
+        String planKey = QueryPlan.key(varName, evidence.keySet(), hiddenString);
+        QueryPlan plan = cache.get(planKey);
+        if(plan == null) {
+            long compileStart = System.nanoTime();
+            plan = QueryPlan.compile(bn, bn.getVariable(varName), evidence, hiddenString);
+            cache.put(planKey, plan);
+            metrics.planned(false, System.nanoTime() - compileStart);
+        } else {
+            metrics.planned(true, 0);
+        }
+        Variable queryVar = plan.getQueryVar();
 
+        // reject the query before it allocates a factor larger than the budget of the network
+        if(plan.getMaxFactorSize() > bn.getMaxFactorSize()) {
+            throw new FactorTooLargeException("The query " + query.trim() + " needs a factor that is too large",
+                    plan.getMaxFactorSize(), bn.getMaxFactorSize());
+        }
 
-        // create a list of factors from the variables
-        List<Factor> factors = new ArrayList<>();
-        for (Variable v : vars) {
-            Factor f= new Factor(v);
-            f.eliminateEvidence(evidence);
-            if(f.getTable().size() > 1) {
-                factors.add(f);
-            }
+        // create a list of factors from the relevant variables
+        List<Factor> factors = plan.createFactors(evidence);
+        if(bn.isLogSpace()) {
+            // compute with the logarithms of the probabilities, so the products do not underflow
+            factors.replaceAll(Factor::toLogSpace);
+        }
+        for (Factor f : factors) {
+            metrics.factorCreated(f);
         }
+
         // if there is only one factor, return the probability of the query variable
         // no need to multiply or sum
         if(factors.size()==1){
             float ans = (float) factors.get(0).getProbability(queryVarString);
-            writer.write((Math.round(ans*100000.0)/100000.0) + "," + NumOfAdditions + "," + NumOfMultiplications);
-            return;
+            String answer = (Math.round(ans*100000.0)/100000.0) + "," + metrics.getNumOfAdditions() + "," + metrics.getNumOfMultiplications();
+            metrics.end(answer);
+            return answer;
         }
 
 
         // eliminate the hidden variables
-        for (Variable h : hiddenVars) {
-            factors = eliminateVariable(factors, h);
+        // the tables of the intermediate factors are taken from the pool of this thread and given back to it
+        FactorPool pool = FactorPool.local();
+        for (Variable h : plan.getSchedule()) {
+            factors = eliminateVariable(factors, h, metrics, pool);
         }
 
         // join the remaining factors and normalize the result
-        Factor lastFactor = joinFactors(factors, queryVar);
+        Factor lastFactor = joinFactors(factors, queryVar, metrics, pool);
         if(lastFactor!=null) {
             lastFactor.normalize();
-            NumOfAdditions += lastFactor.getTable().size()-1;
+            metrics.addAdditions(lastFactor.size()-1);
         }
 
-        // write the probability of the query variable to the output file
+        // return the probability of the query variable
         double ans = factors.get(0).getProbability(queryVarString);
-        writer.write((Math.round(ans*100000.0)/100000.0) + "," + NumOfAdditions + "," + NumOfMultiplications);
+        factors.get(0).release(pool);
+        String answer = (Math.round(ans*100000.0)/100000.0) + "," + metrics.getNumOfAdditions() + "," + metrics.getNumOfMultiplications();
+        metrics.end(answer);
+        return answer;
     }
 
 
+    /**
+     * This method computes the elimination order the planner would use for a query, without running it
+     * the query is of the form P(Q=q|E1=e1, E2=e2, …, Ek=ek) AUTO:heuristic (or just AUTO for min-fill)
+     * @param bn the Bayesian Network
+     * @param query the query
+     * @return the elimination order and the predicted size of the largest factor
+     */
+    public static EliminationOrder planQuery(BayesianNetwork bn, String query) {
+        String[] queryParts = query.split("\\|");
+        String queryVarString = queryParts[0].substring(2);
+        String[] evidenceAndHidden = queryParts[1].split("\\)");
+        String evidenceString = evidenceAndHidden.length > 0 ? evidenceAndHidden[0] : "";
+        String hiddenString = evidenceAndHidden.length > 1 ? evidenceAndHidden[1] : null;
+
+        EliminationOrder.Heuristic heuristic = EliminationOrder.Heuristic.MIN_FILL;
+        if(hiddenString != null && isAuto(hiddenString)) {
+            heuristic = parseHeuristic(hiddenString);
+        }
+        HashMap<String, String> evidence = BayesBall.parseEvidence(evidenceString);
+        Variable queryVar = bn.getVariable(queryVarString.split("=")[0]);
+        return EliminationOrder.compute(createFactors(bn, queryVar, evidence), queryVar, heuristic);
+    }
+
+    /**
+     * @param hiddenString the part of the query after the closing bracket
+     * @return true if the query asks the planner to choose the order of elimination
+     */
+    static boolean isAuto(String hiddenString) {
+        // AUTO or AUTO:heuristic only, so a hidden variable whose name starts with AUTO is still an explicit order
+        String order = hiddenString.trim();
+        return order.equals(AUTO) || order.startsWith(AUTO + ":");
+    }
+
+    /**
+     * @param hiddenString the part of the query after the closing bracket, AUTO or AUTO:heuristic
+     * @return the heuristic to use
+     */
+    static EliminationOrder.Heuristic parseHeuristic(String hiddenString) {
+        String[] parts = hiddenString.trim().split(":");
+        if (parts.length < 2) {
+            return EliminationOrder.Heuristic.MIN_FILL;
+        }
+        return EliminationOrder.Heuristic.parse(parts[1]);
+    }
+
+    /**
+     * This method creates the factors of a query:
+     * one factor for every variable that is relevant to the query, with the evidence eliminated from it
+     * @param bn the Bayesian Network
+     * @param queryVar the query variable
+     * @param evidence the evidence variables and their values
+     * @return the list of factors
+     */
+    public static List<Factor> createFactors(BayesianNetwork bn, Variable queryVar, HashMap<String, String> evidence) {
+        // create a list of the variables in the network to make into factors
+        List<Variable> vars = new ArrayList<>();
+
+        // add only the relevant variables to the list
+        addAncestors(bn, queryVar, evidence, vars);
+        removeIndependentVars(bn, queryVar, evidence, vars);
+
+        // create a list of factors from the variables
+        List<Factor> factors = new ArrayList<>();
+        for (Variable v : vars) {
+            Factor f= new Factor(v, evidence);
+            if(f.size() > 1) {
+                factors.add(f);
+            }
+        }
+        return factors;
+    }
+
     /**
      * This method removes the variables that are independent of the query variable given the evidence
      * @param bn the Bayesian Network
@@ -107,70 +214,103 @@ public class VariableElimination {
      * @param evidence the evidence variables
      */
     public static void removeIndependentVars(BayesianNetwork bn, Variable queryVar, HashMap<String, String> evidence,List<Variable> vars ) {
-        // Make a list of the variables that are independent of the query variable given the evidence
-        ArrayList<Variable> varsToRemove = new ArrayList<>();
+        // Find the variables that are independent of the query variable given the evidence:
+        // the ones the Bayes ball cannot reach from the query variable (one traversal for all of them)
+        BitSet reachable = BayesBall.reachable(bn, queryVar, evidence);
+        BitSet toRemove = new BitSet();
         for (Variable v : vars) {
-            if (BayesBall.areIndependent(bn, queryVar.getName(), v.getName(), evidence)) {
-                varsToRemove.add(v);
+            if (!reachable.get(v.getId())) {
+                toRemove.set(v.getId());
             }
         }
 
-        // For each evidence Variable, if its parents are all in the varsToRemove list, remove it
+        // For each evidence Variable, if its parents are all removed, remove it
         for(String EvidenceVar : evidence.keySet()) {
             Variable v = bn.getVariable(EvidenceVar);
             boolean remove = true;
             for(Variable parent : v.getParents()) {
-                if(!varsToRemove.contains(parent)) {
+                if(!toRemove.get(parent.getId())) {
                     remove = false;
                     break;
                 }
             }
             if(remove) {
-                varsToRemove.add(v);
+                toRemove.set(v.getId());
             }
         }
 
         // remove the variables that are independent of the query variable given the evidence
-        for (Variable v : varsToRemove) {
-            vars.remove(v);
+        List<Variable> relevant = new ArrayList<>(vars.size());
+        for (Variable v : vars) {
+            if (!toRemove.get(v.getId())) {
+                relevant.add(v);
+            }
         }
+        vars.clear();
+        vars.addAll(relevant);
     }
 
     /**
      * This method creates a list of the ancestors of the query variable and the evidence variables
-     * This method is a recursive method that adds the ancestors of a variable to the list
-     * It uses a version of DFS algorithm to traverse the Bayesian Network
+     * It uses a version of DFS algorithm to traverse the Bayesian Network:
+     * the query variable is added first, and then every variable is added after all of its ancestors
      * @param bn the Bayesian Network
      * @param queryVar the query variable
      * @param evidence the evidence variables
      */
 
     public static void addAncestors(BayesianNetwork bn, Variable queryVar, HashMap<String, String> evidence, List<Variable> vars) {
+        // the ids of the variables in the list
+        BitSet added = new BitSet();
+        for (Variable v : vars) {
+            added.set(v.getId());
+        }
         // add the query variable to the list
-        if (!vars.contains(queryVar)) {
+        if (!added.get(queryVar.getId())) {
             vars.add(queryVar);
+            added.set(queryVar.getId());
         }
         // get the ancestors of the query variable
-        getAncestors(queryVar, vars);
+        getAncestors(queryVar, vars, added);
         // get the ancestors of the evidence variables
         for (String e : evidence.keySet()) {
-            getAncestors(bn.getVariable(e), vars);
+            getAncestors(bn.getVariable(e), vars, added);
         }
     }
 
-    public static void getAncestors( Variable v, List<Variable> vars) {
-        // get the parents of the variable
-        // and get the ancestors of the parents
-        for (Variable parent : v.getParents()) {
-            getAncestors(parent, vars);
-            if (!vars.contains(parent)) {
-                vars.add(parent);
+    /**
+     * This method adds a variable and its ancestors to the list, every variable after all of its ancestors
+     * the DFS uses an explicit stack, so long chains of variables do not overflow the call stack
+     * @param v the variable
+     * @param vars the list of variables
+     * @param added the ids of the variables in the list
+     */
+    private static void getAncestors(Variable v, List<Variable> vars, BitSet added) {
+        // a stack of variables and the index of the next parent to visit for each of them
+        ArrayDeque<Variable> stack = new ArrayDeque<>();
+        ArrayDeque<Integer> nextParent = new ArrayDeque<>();
+        stack.push(v);
+        nextParent.push(0);
+        while (!stack.isEmpty()) {
+            Variable current = stack.peek();
+            int next = nextParent.pop();
+            if (next < current.getParents().size()) {
+                // visit the ancestors of the next parent (unless we already added them)
+                nextParent.push(next + 1);
+                Variable parent = current.getParents().get(next);
+                if (!added.get(parent.getId())) {
+                    stack.push(parent);
+                    nextParent.push(0);
+                }
+            } else {
+                // all the ancestors of the variable were added, add the variable
+                stack.pop();
+                if (!added.get(current.getId())) {
+                    vars.add(current);
+                    added.set(current.getId());
+                }
             }
         }
-        // add the variable to the list
-        if (!vars.contains(v)) {
-            vars.add(v);
-        }
     }
 
     /**
@@ -181,12 +321,37 @@ public class VariableElimination {
      */
 
     public static List<Factor> eliminateVariable(List<Factor> factors, Variable hidden) {
+        return eliminateVariable(factors, hidden, new QueryMetrics());
+    }
+
+    /**
+     * This method eliminates a variable from a list of factors (see above)
+     * @param factors the list of factors
+     * @param hidden the hidden variable to eliminate
+     * @param metrics the metrics of the query, for the joins, the sum-out and the number of additions and multiplications
+     * @return a new list of factors with the variable eliminated
+     */
+    public static List<Factor> eliminateVariable(List<Factor> factors, Variable hidden, QueryMetrics metrics) {
+        return eliminateVariable(factors, hidden, metrics, null);
+    }
+
+    /**
+     * This method eliminates a variable from a list of factors (see above)
+     * the factors that are joined and summed out give their tables back to the pool,
+     * so they must not be used by the caller after this call
+     * @param factors the list of factors
+     * @param hidden the hidden variable to eliminate
+     * @param metrics the metrics of the query
+     * @param pool the pool of tables of the new factors (null to allocate new tables)
+     * @return a new list of factors with the variable eliminated
+     */
+    public static List<Factor> eliminateVariable(List<Factor> factors, Variable hidden, QueryMetrics metrics, FactorPool pool) {
         List<Factor> newFactors = new ArrayList<>();
         List<Factor> toMultiply = new ArrayList<>();
 
         // separate the factors that contain the hidden variable from the rest
         for (Factor f : factors) {
-            if (f.getVariables().contains(hidden)) {
+            if (f.contains(hidden)) {
                 toMultiply.add(f);
             } else {
                 newFactors.add(f);
@@ -194,17 +359,21 @@ public class VariableElimination {
         }
 
         // join the factors that contain the hidden variable
-        Factor newFactor = joinFactors(toMultiply , hidden);
+        Factor newFactor = joinFactors(toMultiply , hidden, metrics, pool);
 
         // eliminate the hidden variable from the new factor
         if(newFactor != null) {
-            int sizeOfOld = newFactor.getTable().size();
-            newFactor = newFactor.EliminateVariable(hidden);
+            int sizeOfOld = newFactor.size();
+            Factor product = newFactor;
+            newFactor = product.EliminateVariable(hidden, pool);
+            product.release(pool);
+            metrics.summedOut(newFactor);
             // set the number of additions
-            NumOfAdditions+= (sizeOfOld -newFactor.getTable().size());
+            metrics.addAdditions(sizeOfOld -newFactor.size());
         }
         // add the new factor to the list of factors
-        if(newFactor != null && newFactor.getTable().size() > 1) newFactors.add(newFactor);
+        if(newFactor != null && newFactor.size() > 1) newFactors.add(newFactor);
+        else if(newFactor != null) newFactor.release(pool);
 
         return newFactors;
     }
@@ -218,6 +387,30 @@ public class VariableElimination {
      */
 
     public static Factor joinFactors(List<Factor> factors, Variable hidden) {
+        return joinFactors(factors, hidden, new QueryMetrics());
+    }
+
+    /**
+     * This method joins a list of factors (see above)
+     * @param factors the list of factors
+     * @param hidden the hidden variable to eliminate
+     * @param metrics the metrics of the query, for the joins and the number of multiplications
+     * @return the product of the factors
+     */
+    public static Factor joinFactors(List<Factor> factors, Variable hidden, QueryMetrics metrics) {
+        return joinFactors(factors, hidden, metrics, null);
+    }
+
+    /**
+     * This method joins a list of factors (see above)
+     * the factors that are joined give their tables back to the pool
+     * @param factors the list of factors
+     * @param hidden the hidden variable to eliminate
+     * @param metrics the metrics of the query
+     * @param pool the pool of tables of the new factors (null to allocate new tables)
+     * @return the product of the factors
+     */
+    public static Factor joinFactors(List<Factor> factors, Variable hidden, QueryMetrics metrics, FactorPool pool) {
         if (factors.isEmpty()) return null;
 
         // sort the factors by size
@@ -228,9 +421,12 @@ public class VariableElimination {
         while(factors.size() > 1) {
             Factor f1 = factors.remove(0);
             Factor f2 = factors.remove(0);
-            result = f1.join(f2, hidden);
+            result = f1.join(f2, hidden, pool);
+            f1.release(pool);
+            f2.release(pool);
             insert(factors,result); // insert the new factor in the list of factors according to its size
-            NumOfMultiplications += result.getTable().size(); // set the number of multiplications
+            metrics.joined(result);
+            metrics.addMultiplications(result.size()); // set the number of multiplications
 
         }
         return result;
@@ -248,7 +444,7 @@ public class VariableElimination {
             return;
         }
         for(int i = 0; i < factors.size(); i++) {
-            if(factors.get(i).getTable().size() >= f.getTable().size()) {
+            if(factors.get(i).size() >= f.size()) {
                 factors.add(i,f);
                 return;
             }
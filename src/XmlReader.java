@@ -2,6 +2,10 @@ package src;
 
 import org.w3c.dom.*;
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.util.*;
 
@@ -10,9 +14,213 @@ import java.util.*;
  * This class reads an XML file and creates a Bayesian Network from it
  * The XML file contains the list of variables and their relationships
  *
+ * The file is read in a single pass with a streaming (StAX) parser.
+ * If the streaming parser fails, the file is read again with the DOM parser (readVariables and defineVariables)
  */
 public class XmlReader {
 
+    /**
+     * The definition of a variable as it appears in the file: its parents and its table
+     * we keep the definitions until the end of the file, so they can refer to variables that are declared later
+     */
+    private static class Definition {
+        String varName;
+        List<String> given = new ArrayList<>();
+        double[] table;
+    }
+
+    /**
+     * This method reads the Bayesian Network from the XML file in a single pass
+     * the network is changed only if the whole file was read successfully
+     * @param bn the Bayesian Network
+     * @param filename the name of the XML file
+     * @throws IOException if the file cannot be read
+     * @throws XMLStreamException if the file is not a valid network
+     */
+    public static void readNetwork(BayesianNetwork bn, String filename) throws IOException, XMLStreamException {
+        List<Variable> variables = new ArrayList<>();
+        List<Definition> definitions = new ArrayList<>();
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filename))) {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                Variable variable = null;
+                List<String> outcomes = null;
+                Definition definition = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "VARIABLE":
+                                variable = null;
+                                outcomes = new ArrayList<>();
+                                break;
+                            case "NAME":
+                                String name = reader.getElementText();
+                                if (variable == null && outcomes != null) variable = new Variable(name);
+                                break;
+                            case "OUTCOME":
+                                if (outcomes != null) outcomes.add(reader.getElementText());
+                                break;
+                            case "DEFINITION":
+                                definition = new Definition();
+                                break;
+                            case "FOR":
+                                if (definition != null && definition.varName == null) definition.varName = reader.getElementText();
+                                break;
+                            case "GIVEN":
+                                if (definition != null) definition.given.add(reader.getElementText());
+                                break;
+                            case "TABLE":
+                                if (definition != null && definition.table == null) definition.table = readTable(reader);
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        if (reader.getLocalName().equals("VARIABLE")) {
+                            if (variable == null) throw new XMLStreamException("A variable without a name", reader.getLocation());
+                            variable.setOutcomes(outcomes);
+                            variables.add(variable);
+                            variable = null;
+                            outcomes = null;
+                        } else if (reader.getLocalName().equals("DEFINITION")) {
+                            if (definition.varName == null) throw new XMLStreamException("A definition without a variable", reader.getLocation());
+                            definitions.add(definition);
+                            definition = null;
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        // define the relationships between the variables in the order of the definitions
+        HashMap<String, Variable> byName = new HashMap<>();
+        for (Variable v : variables) {
+            byName.put(v.getName(), v);
+        }
+        for (Definition d : definitions) {
+            Variable v = byName.get(d.varName);
+            if (v == null) throw new XMLStreamException("Definition of an unknown variable: " + d.varName);
+            ArrayList<Variable> parentsList = new ArrayList<Variable>();
+            for (String parentName : d.given) {
+                Variable parent = byName.get(parentName);
+                if (parent == null) throw new XMLStreamException("Unknown parent " + parentName + " of variable " + d.varName);
+                parentsList.add(parent);
+            }
+            for (Variable parent : parentsList) {
+                v.addParent(parent);
+            }
+            if (d.table != null) {
+                try {
+                    v.setProbabilities(new CPT(v, parentsList, d.table));
+                } catch (IllegalArgumentException e) {
+                    throw new XMLStreamException(e.getMessage());
+                }
+            }
+        }
+
+        // Add the variables to the Bayesian Network
+        for (Variable v : variables) {
+            bn.addVariable(v);
+        }
+    }
+
+    /**
+     * This method reads the numbers of a TABLE element directly from the characters of the stream
+     * @param reader the reader, positioned at the start of the TABLE element
+     * @return the numbers in the table
+     * @throws XMLStreamException if the table contains something other than numbers
+     */
+    private static double[] readTable(XMLStreamReader reader) throws XMLStreamException {
+        double[] numbers = new double[16];
+        int count = 0;
+        // a number may be split between two text events, so we collect its characters until a space
+        char[] token = new char[32];
+        int length = 0;
+        int event;
+        while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+            if (event != XMLStreamConstants.CHARACTERS && event != XMLStreamConstants.CDATA && event != XMLStreamConstants.SPACE) {
+                continue;
+            }
+            char[] text = reader.getTextCharacters();
+            int end = reader.getTextStart() + reader.getTextLength();
+            for (int i = reader.getTextStart(); i < end; i++) {
+                if (!Character.isWhitespace(text[i])) {
+                    if (length == token.length) token = Arrays.copyOf(token, length * 2);
+                    token[length++] = text[i];
+                } else if (length > 0) {
+                    if (count == numbers.length) numbers = Arrays.copyOf(numbers, count * 2);
+                    numbers[count++] = parseNumber(token, length, reader);
+                    length = 0;
+                }
+            }
+        }
+        if (length > 0) {
+            if (count == numbers.length) numbers = Arrays.copyOf(numbers, count + 1);
+            numbers[count++] = parseNumber(token, length, reader);
+        }
+        return Arrays.copyOf(numbers, count);
+    }
+
+    /**
+     * Parse a number of a table (see parseNumber below)
+     * @throws XMLStreamException if the characters are not a number
+     */
+    private static double parseNumber(char[] chars, int length, XMLStreamReader reader) throws XMLStreamException {
+        try {
+            return parseNumber(chars, length);
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Not a number in a table: " + new String(chars, 0, length), reader.getLocation());
+        }
+    }
+
+    // the powers of 10 that are exact doubles
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * This method parses a decimal number from characters without creating a String
+     * a number like 0.95 is parsed as 95 / 10^2: when both are exact doubles the division gives
+     * the same (correctly rounded) result as Double.parseDouble.
+     * Other numbers (exponents, too many digits) are parsed with Double.parseDouble
+     * @param chars the characters
+     * @param length the number of characters
+     * @return the number
+     */
+    static double parseNumber(char[] chars, int length) {
+        int i = 0;
+        boolean negative = false;
+        if (chars[0] == '-' || chars[0] == '+') {
+            negative = chars[0] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < length; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fractionDigits >= 0) fractionDigits++;
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < length || digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(chars, 0, length));
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
 
     /**
      * This method reads the list of variables from the XML file
@@ -141,6 +349,14 @@ public class XmlReader {
      * @param filename the name of the XML file
      */
     public static void createBayesianNetwork(BayesianNetwork bn, String filename) {
+        // Read the network in a single pass with the streaming parser
+        try {
+            readNetwork(bn, filename);
+            return;
+        } catch (IOException | XMLStreamException e) {
+            // fall back to the DOM parser
+        }
+
         // Read the list of variables from the XML file
         ArrayList<Variable> variables = XmlReader.readVariables(filename);
         // Add the variables to the Bayesian Network
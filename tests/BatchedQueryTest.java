@@ -0,0 +1,79 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BatchedQuery;
+import src.BayesianNetwork;
+import src.VariableElimination;
+import src.XmlReader;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BatchedQueryTest {
+
+    /**
+     * Answer a template for every combination of the values of its evidence variables,
+     * once as a batch and once with one Variable Elimination query per case, and compare the answers
+     * @param networkFile the XML file of the network
+     * @param template the query with the names of the evidence variables only
+     * @param logSpace true to compute in log space
+     */
+    private void runTest(String networkFile, String template, boolean logSpace) {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, networkFile);
+        bn.setLogSpace(logSpace);
+
+        String head = template.substring(0, template.indexOf('|'));
+        String tail = template.substring(template.indexOf(')'));
+        List<String> names = Arrays.asList(template.substring(template.indexOf('|') + 1, template.indexOf(')')).split(","));
+
+        // the number of cases: every combination of the outcomes of the evidence variables
+        int cases = 1;
+        for (String name : names) {
+            cases *= bn.getVariable(name).getOutcomes().size();
+        }
+        Map<String, String[]> evidence = new HashMap<>();
+        for (String name : names) {
+            evidence.put(name, new String[cases]);
+        }
+        List<String> queries = new ArrayList<>();
+        for (int b = 0; b < cases; b++) {
+            StringBuilder values = new StringBuilder();
+            int rest = b;
+            for (String name : names) {
+                List<String> outcomes = bn.getVariable(name).getOutcomes();
+                String value = outcomes.get(rest % outcomes.size());
+                rest /= outcomes.size();
+                evidence.get(name)[b] = value;
+                if (values.length() > 0) values.append(",");
+                values.append(name).append("=").append(value);
+            }
+            queries.add(head + "|" + values + tail);
+        }
+
+        BatchedQuery.Result result = BatchedQuery.evaluate(bn, template, evidence);
+        assertEquals(cases, result.size());
+        for (int b = 0; b < cases; b++) {
+            assertEquals(VariableElimination.processVariableEliminationQuery(bn, queries.get(b)), result.getAnswer(b), queries.get(b));
+        }
+    }
+
+    @Test
+    public void alarm() {
+        runTest("tests/NetworkFiles/alarm_net.xml", "P(B=T|J,M) A-E", false);
+        runTest("tests/NetworkFiles/alarm_net.xml", "P(B=T|J,M) AUTO", false);
+        runTest("tests/NetworkFiles/alarm_net.xml", "P(J=T|B,E) A-M", false);
+    }
+
+    @Test
+    public void bigNet() {
+        runTest("tests/New_tests/big_net.xml", "P(B1=T|B2,B3,A2,C1,D1) AUTO", false);
+    }
+
+    @Test
+    public void logSpace() {
+        runTest("tests/NetworkFiles/alarm_net.xml", "P(B=T|J,M) A-E", true);
+        runTest("tests/New_tests/big_net.xml", "P(B1=T|B2,B3,A2,C1,D1) AUTO", true);
+    }
+}
@@ -1,28 +1,41 @@
 package tests;
 
 import org.junit.jupiter.api.Test;
+import src.BayesBall;
+import src.BayesianNetwork;
 import src.Ex1;
+import src.QueryMetrics;
+import src.QueryPlan;
+import src.XmlReader;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
 import java.net.URISyntaxException;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Ex1Test {
 
-    private void runTest(int testNumber) {
+    private void runTest(int testNumber, String... options) {
         try {
             // Construct paths to input and expected output files
             String inputFileName = "tests/inputs/New_input" + testNumber + ".txt";
-            String outputFileName = "tests/outputs/Actual/outputFile" + (testNumber) + ".txt";
+            String outputFileName = "tests/outputs/Actual/outputFile" + (testNumber) + (options.length > 0 ? "_" + String.join("_", options) : "") + ".txt";
             String expectedOutputFileName = "tests/outputs/New_Output" + (testNumber) + ".txt";
+            Files.createDirectories(Paths.get("tests/outputs/Actual"));
 
-            String[] args = {inputFileName, outputFileName};
+            // the options of Ex1 (e.g. --log-space, or the number of threads) come after the file names
+            String[] args = new String[2 + options.length];
+            args[0] = inputFileName;
+            args[1] = outputFileName;
+            System.arraycopy(options, 0, args, 2, options.length);
 
             Ex1.main(args);
 
@@ -68,6 +81,113 @@ public class Ex1Test {
 
         runTest(6);
     }
+    @Test
+    public void test8() throws IOException, URISyntaxException {
+        // AUTO and AUTO:heuristic let the planner choose the order, the answers are those of the explicit orders
+        runTest(8);
+    }
+
+    // the same inputs in log space must give the same outputs
+    // (4 is left out: its expected output has 1.00000 where Ex1 writes 1.0, see test4)
+    @Test
+    public void logSpaceTest1() throws IOException, URISyntaxException {
+
+        runTest(1, "--log-space");
+    }
+    @Test
+    public void logSpaceTest2() throws IOException, URISyntaxException {
+
+        runTest(2, "--log-space");
+    }
+    @Test
+    public void logSpaceTest3() throws IOException, URISyntaxException {
+
+        runTest(3, "--log-space");
+    }
+    @Test
+    public void logSpaceTest5() throws IOException, URISyntaxException {
+
+        runTest(5, "--log-space");
+    }
+    @Test
+    public void logSpaceTest6() throws IOException, URISyntaxException {
+
+        runTest(6, "--log-space");
+    }
+    @Test
+    public void logSpaceTest8() throws IOException, URISyntaxException {
+
+        runTest(8, "--log-space");
+    }
+    @Test
+    public void logSpaceTest9() throws IOException, URISyntaxException {
+        // a chain of 1500 hidden variables with an observed child each: without log space the products underflow to 0
+        runTest(9, "--log-space");
+    }
+    // the same inputs with the network loaded from its snapshot:
+    // the first run creates the snapshot next to the XML file and the second one loads it
+    @Test
+    public void snapshotTest2() throws IOException, URISyntaxException {
+        runTest(2, "--snapshot");
+        runTest(2, "--snapshot");
+    }
+    @Test
+    public void snapshotTest5() throws IOException, URISyntaxException {
+        runTest(5, "--snapshot");
+        runTest(5, "--snapshot");
+    }
+    @Test
+    public void snapshotTest8() throws IOException, URISyntaxException {
+        runTest(8, "--snapshot");
+        runTest(8, "--snapshot");
+    }
+
+    @Test
+    public void test10() throws IOException, URISyntaxException {
+        // the first query needs a factor of 288 entries: it is answered with an error line and the next queries still run
+        runTest(10, "--max-factor-size=100");
+    }
+
+    // the same inputs with a pool of threads give the same output as one thread
+    @Test
+    public void threadsTest8() throws IOException, URISyntaxException {
+        runTest(8, "4");
+    }
+    @Test
+    public void threadsTest10() throws IOException, URISyntaxException {
+        runTest(10, "--max-factor-size=100", "3");
+    }
+
+    @Test
+    public void test11() throws IOException, URISyntaxException {
+        // the third query asks for a variable that is not in the network: the answers before it are still written
+        runTest(11);
+        runTest(11, "1");
+    }
+    @Test
+    public void threadsTest11() throws IOException, URISyntaxException {
+        runTest(11, "4");
+    }
+
+    @Test
+    public void predictedMaxFactorSize() throws IOException {
+        // the largest factor a query creates is never larger than the size its plan predicts
+        for (int i = 1; i <= 10; i++) {
+            List<String> lines = Files.readAllLines(Paths.get("tests/inputs/New_input" + i + ".txt"), StandardCharsets.UTF_8);
+            BayesianNetwork bn = new BayesianNetwork();
+            XmlReader.createBayesianNetwork(bn, lines.get(0).trim());
+            for (String line : lines.subList(1, lines.size())) {
+                String query = line.trim();
+                if (!query.startsWith("P(")) continue;
+                QueryMetrics metrics = new QueryMetrics();
+                Ex1.processQuery(bn, query, Ex1.ENGINE_VE, metrics);
+                HashMap<String, String> evidence = BayesBall.parseEvidence(query.substring(query.indexOf('|') + 1, query.indexOf(')')));
+                String hidden = query.substring(query.indexOf(')') + 1);
+                QueryPlan plan = bn.getPlanCache().get(QueryPlan.key(query.substring(2, query.indexOf('=')), evidence.keySet(), hidden));
+                assertTrue(metrics.getLargestFactorEntries() <= plan.getMaxFactorSize(), query);
+            }
+        }
+    }
 //    @Test
 //    public void test7() throws IOException, URISyntaxException {
 //
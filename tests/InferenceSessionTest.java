@@ -0,0 +1,111 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BayesianNetwork;
+import src.InferenceSession;
+import src.Variable;
+import src.VariableElimination;
+import src.XmlReader;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InferenceSessionTest {
+
+    private static BayesianNetwork load(String networkFile) {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, networkFile);
+        return bn;
+    }
+
+    /**
+     * Compare the posterior of a variable in the session with a new Variable Elimination query with the same evidence
+     * @param bn the Bayesian Network
+     * @param session the session
+     * @param name the variable (not an evidence variable)
+     */
+    private void assertMarginal(BayesianNetwork bn, InferenceSession session, String name) {
+        List<String> evidence = new ArrayList<>();
+        for (Map.Entry<String, String> e : session.getEvidence().entrySet()) {
+            evidence.add(e.getKey() + "=" + e.getValue());
+        }
+        Map<String, Double> marginal = session.marginal(name);
+        for (String outcome : bn.getVariable(name).getOutcomes()) {
+            String query = "P(" + name + "=" + outcome + "|" + String.join(",", evidence) + ") AUTO";
+            String ve = VariableElimination.processVariableEliminationQuery(bn, query);
+            assertEquals(Double.parseDouble(ve.split(",")[0]), marginal.get(outcome), 1e-5, query);
+        }
+    }
+
+    /**
+     * Compare the posteriors of all the variables that are not evidence
+     */
+    private void assertMarginals(BayesianNetwork bn, InferenceSession session) {
+        for (Variable v : bn.getVariables().values()) {
+            if (!session.getEvidence().containsKey(v.getName())) {
+                assertMarginal(bn, session, v.getName());
+            }
+        }
+    }
+
+    @Test
+    public void alarm() {
+        BayesianNetwork bn = load("tests/NetworkFiles/alarm_net.xml");
+        InferenceSession session = new InferenceSession(bn);
+        assertMarginals(bn, session);
+
+        // observe, change an observation, retract back to no evidence
+        session.observe("J", "T");
+        assertMarginals(bn, session);
+        session.observe("M", "T");
+        assertMarginals(bn, session);
+        session.observe("J", "F");
+        assertMarginals(bn, session);
+        session.retract("M");
+        assertMarginals(bn, session);
+        session.retract("J");
+        assertEquals(0, session.getEvidence().size());
+        assertMarginals(bn, session);
+
+        // clear several observations at once
+        session.observe("E", "T");
+        session.observe("M", "F");
+        assertMarginals(bn, session);
+        session.clear();
+        assertEquals(0, session.getEvidence().size());
+        assertMarginals(bn, session);
+    }
+
+    @Test
+    public void randomSequence() {
+        // a seeded random sequence of observations, changes, retractions and clears on a larger network
+        BayesianNetwork bn = load("tests/New_tests/big_net.xml");
+        List<Variable> vars = new ArrayList<>(bn.getVariables().values());
+        vars.sort(Comparator.comparing(Variable::getName));
+        InferenceSession session = new InferenceSession(bn);
+        Random random = new Random(13);
+        for (int step = 0; step < 60; step++) {
+            int action = random.nextInt(10);
+            if (action == 0) {
+                session.clear();
+            } else if (action < 4 && !session.getEvidence().isEmpty()) {
+                List<String> observed = new ArrayList<>(session.getEvidence().keySet());
+                session.retract(observed.get(random.nextInt(observed.size())));
+            } else {
+                // observe a variable, or change the value of an observed one
+                Variable v = vars.get(random.nextInt(vars.size()));
+                List<String> outcomes = v.getOutcomes();
+                session.observe(v.getName(), outcomes.get(random.nextInt(outcomes.size())));
+            }
+
+            // the posteriors of a few variables that are not evidence
+            for (int i = 0; i < 3; i++) {
+                Variable v = vars.get(random.nextInt(vars.size()));
+                if (!session.getEvidence().containsKey(v.getName())) {
+                    assertMarginal(bn, session, v.getName());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BayesianNetwork;
+import src.Ex1;
+import src.JunctionTree;
+import src.VariableElimination;
+import src.XmlReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JunctionTreeTest {
+
+    /**
+     * Answer every query of an input file with the junction tree and with Variable Elimination,
+     * and compare the probabilities (the numbers of additions and multiplications of the engines are different)
+     * @param inputFile the input file: the XML file of the network and then the queries
+     */
+    private void runTest(String inputFile) throws IOException {
+        List<String> lines = Files.readAllLines(new File(inputFile).toPath(), StandardCharsets.UTF_8);
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, lines.get(0).trim());
+        for (String line : lines.subList(1, lines.size())) {
+            String query = line.trim();
+            if (query.isEmpty()) continue;
+            String jt = Ex1.processQuery(bn, query, Ex1.ENGINE_JT);
+            String ve = Ex1.processQuery(bn, query, Ex1.ENGINE_VE);
+            if (!query.startsWith("P(")) {
+                // a Bayes Ball query is answered the same way by both engines
+                assertEquals(ve, jt, query);
+                continue;
+            }
+            assertEquals(Double.parseDouble(ve.split(",")[0]), Double.parseDouble(jt.split(",")[0]), 1e-5, query);
+        }
+    }
+
+    @Test
+    public void inputs() throws IOException {
+        for (int i = 1; i <= 7; i++) {
+            runTest("tests/inputs/input" + i + ".txt");
+        }
+    }
+
+    @Test
+    public void newInputs() throws IOException {
+        for (int i = 1; i <= 8; i++) {
+            runTest("tests/inputs/New_input" + i + ".txt");
+        }
+    }
+
+    @Test
+    public void marginals() {
+        // the posterior of every variable of alarm_net, with no evidence and with evidence
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, "tests/NetworkFiles/alarm_net.xml");
+        String[][] cases = {{}, {"J=T", "M=T"}, {"A=F", "E=T"}};
+        for (String[] evidence : cases) {
+            JunctionTree tree = new JunctionTree(bn.getJunctionTree());
+            for (String e : evidence) {
+                tree.observe(e.split("=")[0], e.split("=")[1]);
+            }
+            Map<String, double[]> marginals = tree.marginals();
+            assertEquals(bn.size(), marginals.size());
+            for (Map.Entry<String, double[]> e : marginals.entrySet()) {
+                String name = e.getKey();
+                List<String> outcomes = bn.getVariable(name).getOutcomes();
+                String observed = observedValue(evidence, name);
+                if (observed != null) {
+                    // an observed variable has all the probability on its value (Variable Elimination cannot ask this)
+                    for (int o = 0; o < outcomes.size(); o++) {
+                        assertEquals(outcomes.get(o).equals(observed) ? 1.0 : 0.0, e.getValue()[o], 1e-9, name);
+                    }
+                    continue;
+                }
+                for (int o = 0; o < outcomes.size(); o++) {
+                    String query = "P(" + name + "=" + outcomes.get(o) + "|" + String.join(",", evidence) + ") AUTO";
+                    String ve = VariableElimination.processVariableEliminationQuery(bn, query);
+                    assertEquals(Double.parseDouble(ve.split(",")[0]), e.getValue()[o], 1e-5, query);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the value of a variable in the evidence, or null if it is not observed
+     */
+    private static String observedValue(String[] evidence, String name) {
+        for (String e : evidence) {
+            if (e.split("=")[0].equals(name)) {
+                return e.split("=")[1];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BayesianNetwork;
+import src.Ex1;
+import src.NetworkSnapshot;
+import src.XmlReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetworkSnapshotTest {
+
+    private static final String[] QUERIES = {
+            "P(B=T|J=T,M=T) A-E",
+            "P(J=T|B=T) A-E-M",
+            "P(A=T|) B-E-J-M",
+            "B-E|",
+            "B-E|J=T"
+    };
+
+    /**
+     * Answer the queries with a network loaded from its snapshot and with the network read from the XML file
+     */
+    private void assertSameAnswers(BayesianNetwork fromSnapshot, String xmlFile) {
+        BayesianNetwork fromXml = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(fromXml, xmlFile);
+        for (String query : QUERIES) {
+            assertEquals(Ex1.processQuery(fromXml, query), Ex1.processQuery(fromSnapshot, query), query);
+        }
+    }
+
+    @Test
+    public void roundTripAndStaleSnapshot() throws IOException {
+        // a copy of the network, so the test can change it
+        Path dir = Files.createTempDirectory("snapshot");
+        String xmlFile = dir.resolve("alarm_net.xml").toString();
+        String snapshotFile = xmlFile + NetworkSnapshot.EXTENSION;
+        Files.copy(Paths.get("tests/NetworkFiles/alarm_net.xml"), Paths.get(xmlFile));
+        try {
+            // the first load reads the XML file and creates the snapshot
+            BayesianNetwork bn = new BayesianNetwork();
+            NetworkSnapshot.loadOrCreate(bn, xmlFile);
+            assertTrue(new File(snapshotFile).exists());
+            assertSameAnswers(bn, xmlFile);
+
+            // the snapshot alone gives the same answers
+            BayesianNetwork loaded = new BayesianNetwork();
+            NetworkSnapshot.load(loaded, xmlFile, snapshotFile);
+            assertSameAnswers(loaded, xmlFile);
+
+            // change the table of B in the XML file: the old snapshot must not be loaded any more
+            String before = Ex1.processQuery(bn, QUERIES[0]);
+            String xml = new String(Files.readAllBytes(Paths.get(xmlFile)), StandardCharsets.UTF_8);
+            String changed = xml.replace("<TABLE>0.001 0.999</TABLE>", "<TABLE>0.2 0.8</TABLE>");
+            assertTrue(!changed.equals(xml));
+            Files.write(Paths.get(xmlFile), changed.getBytes(StandardCharsets.UTF_8));
+            boolean stale = false;
+            try {
+                NetworkSnapshot.load(new BayesianNetwork(), xmlFile, snapshotFile);
+            } catch (IOException e) {
+                stale = true;
+            }
+            assertTrue(stale, "a snapshot of the old XML file was loaded");
+
+            // loadOrCreate reads the changed XML file and creates the snapshot again
+            BayesianNetwork rebuilt = new BayesianNetwork();
+            NetworkSnapshot.loadOrCreate(rebuilt, xmlFile);
+            assertSameAnswers(rebuilt, xmlFile);
+            assertTrue(!before.equals(Ex1.processQuery(rebuilt, QUERIES[0])), "the answer did not change with the table");
+            BayesianNetwork reloaded = new BayesianNetwork();
+            NetworkSnapshot.load(reloaded, xmlFile, snapshotFile);
+            assertSameAnswers(reloaded, xmlFile);
+        } finally {
+            Files.deleteIfExists(Paths.get(snapshotFile));
+            Files.deleteIfExists(Paths.get(xmlFile));
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BayesBall;
+import src.BayesianNetwork;
+import src.ParallelSampler;
+import src.Sampling;
+import src.XmlReader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelSamplerTest {
+
+    // the number of samples of a round of the sampler
+    private static final int ROUND = ParallelSampler.BLOCK_SIZE * ParallelSampler.BLOCKS_PER_ROUND;
+
+    private static BayesianNetwork load(String networkFile) {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, networkFile);
+        return bn;
+    }
+
+    private static Sampling.Estimate sample(int threads, BayesianNetwork bn, String queryVar, String evidence,
+                                            int maxSamples, long seed, double targetHalfWidth) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            HashMap<String, String> observed = BayesBall.parseEvidence(evidence);
+            return ParallelSampler.likelihoodWeighting(pool, bn, bn.getVariable(queryVar), observed, maxSamples, seed, targetHalfWidth);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sameResultForAnyNumberOfThreads() {
+        // one seed gives the same estimate, to the last bit, whatever the number of threads
+        BayesianNetwork bn = load("tests/NetworkFiles/alarm_net.xml");
+        Sampling.Estimate one = sample(1, bn, "B", "J=T,M=T", 3 * ROUND, 5, 0.0);
+        Sampling.Estimate four = sample(4, bn, "B", "J=T,M=T", 3 * ROUND, 5, 0.0);
+        assertEquals(one.getNumOfSamples(), four.getNumOfSamples());
+        assertTrue(Arrays.equals(one.getProbabilities(), four.getProbabilities()), one + " != " + four);
+        assertTrue(Arrays.equals(one.getHalfWidths(), four.getHalfWidths()), one + " != " + four);
+    }
+
+    @Test
+    public void earlyStop() {
+        // a reachable half width stops the sampler before its budget
+        BayesianNetwork bn = load("tests/NetworkFiles/alarm_net.xml");
+        int maxSamples = 20 * ROUND;
+        Sampling.Estimate estimate = sample(4, bn, "J", "B=T", maxSamples, 1, 0.005);
+        assertTrue(estimate.getNumOfSamples() < maxSamples, "drew all " + estimate.getNumOfSamples() + " samples");
+        assertTrue(estimate.getMaxHalfWidth() <= 0.005, estimate.toString());
+
+        // with no target, all the samples are drawn
+        assertEquals(maxSamples, sample(4, bn, "J", "B=T", maxSamples, 1, 0.0).getNumOfSamples());
+    }
+
+    @Test
+    public void noTargetWithOneOutcome() {
+        // B is always T when A is T: the half width is 0 after the first round, but with no target all the samples are drawn
+        BayesianNetwork bn = load("tests/NetworkFiles/tirgul2_net.xml");
+        Sampling.Estimate estimate = sample(2, bn, "B", "A=T", 3 * ROUND, 1, 0.0);
+        assertEquals(1.0, estimate.getProbability("T"), 0.0);
+        assertEquals(3 * ROUND, estimate.getNumOfSamples());
+    }
+}
@@ -0,0 +1,83 @@
+package tests;
+
+import org.junit.jupiter.api.Test;
+import src.BayesBall;
+import src.BayesianNetwork;
+import src.Sampling;
+import src.VariableElimination;
+import src.XmlReader;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SamplingTest {
+
+    private static final int SAMPLES = 100000;
+
+    // query variables and their evidence on alarm_net
+    private static final String[][] QUERIES = {{"B", "J=T,M=T"}, {"J", "B=T"}, {"E", "A=T"}, {"A", ""}};
+
+    private static BayesianNetwork alarm() {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, "tests/NetworkFiles/alarm_net.xml");
+        return bn;
+    }
+
+    /**
+     * @return the exact probability of the query variable being T, by Variable Elimination
+     */
+    private static double exact(BayesianNetwork bn, String[] query) {
+        String answer = VariableElimination.processVariableEliminationQuery(bn, "P(" + query[0] + "=T|" + query[1] + ") AUTO");
+        return Double.parseDouble(answer.split(",")[0]);
+    }
+
+    /**
+     * The estimate of the seeded sampler is within the half width of its 95% interval of the exact answer
+     * (the exact answer is rounded to 5 decimals)
+     */
+    private static void assertWithinInterval(double exact, Sampling.Estimate estimate, String query) {
+        double error = Math.abs(estimate.getProbability("T") - exact);
+        assertTrue(error <= estimate.getHalfWidths()[0] + 5e-6,
+                query + ": " + estimate + " is not within its interval of the exact " + exact);
+    }
+
+    @Test
+    public void likelihoodWeighting() {
+        BayesianNetwork bn = alarm();
+        for (String[] query : QUERIES) {
+            HashMap<String, String> evidence = BayesBall.parseEvidence(query[1]);
+            Sampling.Estimate estimate = Sampling.likelihoodWeighting(bn, bn.getVariable(query[0]), evidence, SAMPLES, Sampling.DEFAULT_SEED);
+            assertWithinInterval(exact(bn, query), estimate, "LW " + query[0] + "|" + query[1]);
+        }
+    }
+
+    @Test
+    public void gibbs() {
+        BayesianNetwork bn = alarm();
+        for (String[] query : QUERIES) {
+            HashMap<String, String> evidence = BayesBall.parseEvidence(query[1]);
+            Sampling.Estimate estimate = Sampling.gibbs(bn, bn.getVariable(query[0]), evidence, SAMPLES, Sampling.DEFAULT_SEED);
+            assertWithinInterval(exact(bn, query), estimate, "GIBBS " + query[0] + "|" + query[1]);
+        }
+    }
+
+    @Test
+    public void seededQueries() {
+        // a query with a seed gives the same answer every time, and the answer is the rounded estimate
+        BayesianNetwork bn = alarm();
+        for (String method : new String[]{Sampling.LIKELIHOOD_WEIGHTING, Sampling.GIBBS}) {
+            String query = "P(B=T|J=T,M=T) " + method + ":" + SAMPLES + ":7";
+            String answer = Sampling.processSamplingQuery(bn, query);
+            assertEquals(answer, Sampling.processSamplingQuery(bn, query), query);
+
+            HashMap<String, String> evidence = BayesBall.parseEvidence("J=T,M=T");
+            Sampling.Estimate estimate = method.equals(Sampling.GIBBS)
+                    ? Sampling.gibbs(bn, bn.getVariable("B"), evidence, SAMPLES, 7)
+                    : Sampling.likelihoodWeighting(bn, bn.getVariable("B"), evidence, SAMPLES, 7);
+            double probability = Math.round(estimate.getProbability("T") * 100000.0) / 100000.0;
+            assertEquals(probability, Double.parseDouble(answer.split(",")[0]), 0.0, query);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import src.BatchedQuery;
+import src.BayesianNetwork;
+import src.VariableElimination;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchedQueryBenchmark
+ * JMH benchmark of one query shape answered for many cases that differ only in the evidence values:
+ * one VariableElimination query per case, against one BatchedQuery for all the cases.
+ * the scores are per case.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchedQueryBenchmark {
+
+    private static final int CASES = 256;
+
+    @Param({"tests/NetworkFiles/alarm_net.xml", "tests/NetworkFiles/net10.xml", "tests/New_tests/big_net.xml"})
+    public String network;
+
+    private BayesianNetwork bn;
+    private List<String> queries;
+    private String template;
+    private Map<String, String[]> evidence;
+
+    @Setup
+    public void setup() {
+        bn = BenchmarkQueries.load(network);
+
+        // the first random query with evidence gives the shape
+        String shape = null;
+        for (String query : BenchmarkQueries.eliminationQueries(bn, 64, 1)) {
+            if (!query.contains("|)")) {
+                shape = query;
+                break;
+            }
+        }
+        String head = shape.substring(0, shape.indexOf('|'));
+        String tail = shape.substring(shape.indexOf(')'));
+        List<String> names = new ArrayList<>();
+        for (String e : shape.substring(shape.indexOf('|') + 1, shape.indexOf(')')).split(",")) {
+            names.add(e.split("=")[0]);
+        }
+        template = head + "|" + String.join(",", names) + tail;
+
+        // random evidence values for every case, as columns and as one query per case
+        Random random = new Random(1);
+        evidence = new HashMap<>();
+        for (String name : names) {
+            evidence.put(name, new String[CASES]);
+        }
+        queries = new ArrayList<>();
+        for (int b = 0; b < CASES; b++) {
+            StringBuilder values = new StringBuilder();
+            for (String name : names) {
+                List<String> outcomes = bn.getVariable(name).getOutcomes();
+                String value = outcomes.get(random.nextInt(outcomes.size()));
+                evidence.get(name)[b] = value;
+                if (values.length() > 0) values.append(",");
+                values.append(name).append("=").append(value);
+            }
+            queries.add(head + "|" + values + tail);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void perCase(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(VariableElimination.processVariableEliminationQuery(bn, query));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CASES)
+    public void batched(Blackhole bh) {
+        bh.consume(BatchedQuery.evaluate(bn, template, evidence));
+    }
+}
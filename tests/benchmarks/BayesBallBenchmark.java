@@ -0,0 +1,49 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import src.BayesBall;
+import src.BayesianNetwork;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BayesBallBenchmark
+ * JMH benchmark of BayesBall.processBayesBallQuery on random independence queries of a network.
+ * the scores are per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BayesBallBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"tests/NetworkFiles/alarm_net.xml", "tests/NetworkFiles/BallNet.xml", "tests/NetworkFiles/blueNet.xml",
+            "tests/NetworkFiles/net3.xml", "tests/NetworkFiles/net5.xml", "tests/NetworkFiles/net6.xml",
+            "tests/NetworkFiles/net7.xml", "tests/NetworkFiles/net8.xml", "tests/NetworkFiles/net9.xml",
+            "tests/NetworkFiles/net10.xml", "tests/NetworkFiles/tirgul_net.xml", "tests/NetworkFiles/tirgul2_net.xml",
+            "tests/NetworkFiles/tirgul3_net.xml", "tests/New_tests/big_net.xml"})
+    public String network;
+
+    private BayesianNetwork bn;
+    private List<String> queries;
+
+    @Setup
+    public void setup() {
+        bn = BenchmarkQueries.load(network);
+        queries = BenchmarkQueries.bayesBallQueries(bn, QUERIES, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void processBayesBallQuery(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(BayesBall.processBayesBallQuery(bn, query));
+        }
+    }
+}
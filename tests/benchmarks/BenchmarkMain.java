@@ -0,0 +1,31 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain
+ * Runs the JMH benchmarks with the GC profiler, which adds the allocation rate (gc.alloc.rate.norm is bytes per operation)
+ * to the throughput and average time of every benchmark.
+ *
+ * Usage: java tests.benchmarks.BenchmarkMain [regex of the benchmarks to run] [result file]
+ * the default is all the benchmarks of this package, and the results are also written as JSON to jmh-result.json
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "tests\\.benchmarks\\..*Benchmark";
+        String result = args.length > 1 ? args[1] : "jmh-result.json";
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .result(result)
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        new Runner(options).run();
+    }
+}
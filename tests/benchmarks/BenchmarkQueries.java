@@ -0,0 +1,101 @@
+package tests.benchmarks;
+
+import src.BayesianNetwork;
+import src.Variable;
+import src.XmlReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * BenchmarkQueries
+ * Loads the networks of the benchmarks and creates random queries for them.
+ * The queries depend only on the network and the seed, so every run of a benchmark answers the same queries.
+ */
+public class BenchmarkQueries {
+
+    // the largest number of evidence variables of a query
+    private static final int MAX_EVIDENCE = 10;
+
+    /**
+     * Load a network from its XML file
+     * @param network the name of the XML file
+     * @return the Bayesian Network
+     */
+    public static BayesianNetwork load(String network) {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, network);
+        return bn;
+    }
+
+    /**
+     * Create Bayes Ball queries of the form A-B|E1=e1,...,Ek=ek
+     * @param bn the Bayesian Network
+     * @param count the number of queries
+     * @param seed the seed of the random queries
+     * @return the queries
+     */
+    public static List<String> bayesBallQueries(BayesianNetwork bn, int count, long seed) {
+        Random random = new Random(seed);
+        List<Variable> vars = sortedVariables(bn);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Variable a = vars.get(random.nextInt(vars.size()));
+            Variable b = vars.get(random.nextInt(vars.size()));
+            while (b == a && vars.size() > 1) {
+                b = vars.get(random.nextInt(vars.size()));
+            }
+            queries.add(a.getName() + "-" + b.getName() + "|" + evidence(vars, random, a, b));
+        }
+        return queries;
+    }
+
+    /**
+     * Create Variable Elimination queries of the form P(Q=q|E1=e1,...,Ek=ek) AUTO
+     * @param bn the Bayesian Network
+     * @param count the number of queries
+     * @param seed the seed of the random queries
+     * @return the queries
+     */
+    public static List<String> eliminationQueries(BayesianNetwork bn, int count, long seed) {
+        Random random = new Random(seed);
+        List<Variable> vars = sortedVariables(bn);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Variable q = vars.get(random.nextInt(vars.size()));
+            String outcome = q.getOutcomes().get(random.nextInt(q.getOutcomes().size()));
+            queries.add("P(" + q.getName() + "=" + outcome + "|" + evidence(vars, random, q, q) + ") AUTO");
+        }
+        return queries;
+    }
+
+    /**
+     * @return up to a third of the other variables (at most MAX_EVIDENCE) with random outcomes, in the form E1=e1,...,Ek=ek
+     */
+    private static String evidence(List<Variable> vars, Random random, Variable a, Variable b) {
+        List<Variable> shuffled = new ArrayList<>(vars);
+        Collections.shuffle(shuffled, random);
+        int k = random.nextInt(Math.min(vars.size() / 3, MAX_EVIDENCE) + 1);
+        StringBuilder s = new StringBuilder();
+        for (Variable e : shuffled) {
+            if (k == 0) break;
+            if (e == a || e == b) continue;
+            if (s.length() > 0) s.append(",");
+            s.append(e.getName()).append("=").append(e.getOutcomes().get(random.nextInt(e.getOutcomes().size())));
+            k--;
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return the variables of the network sorted by name (the order of the hash map is not stable)
+     */
+    private static List<Variable> sortedVariables(BayesianNetwork bn) {
+        List<Variable> vars = new ArrayList<>(bn.getVariables().values());
+        vars.sort(Comparator.comparing(Variable::getName));
+        return vars;
+    }
+}
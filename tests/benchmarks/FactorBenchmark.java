@@ -0,0 +1,80 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import src.BayesianNetwork;
+import src.Factor;
+import src.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FactorBenchmark
+ * JMH benchmarks of Factor.join and Factor.EliminateVariable.
+ * For every variable with children we join the factor of the variable with the factors of its children,
+ * and sum the variable out of the product (the work Variable Elimination does when it eliminates that variable).
+ * the scores are per network: all the families of the network in one operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorBenchmark {
+
+    @Param({"tests/NetworkFiles/alarm_net.xml", "tests/NetworkFiles/BallNet.xml", "tests/NetworkFiles/blueNet.xml",
+            "tests/NetworkFiles/net3.xml", "tests/NetworkFiles/net5.xml", "tests/NetworkFiles/net6.xml",
+            "tests/NetworkFiles/net7.xml", "tests/NetworkFiles/net8.xml", "tests/NetworkFiles/net9.xml",
+            "tests/NetworkFiles/net10.xml", "tests/NetworkFiles/tirgul2_net.xml", "tests/NetworkFiles/tirgul3_net.xml",
+            "tests/New_tests/big_net.xml"})
+    public String network;
+
+    // the factors of every family, the variable of the family and the product of the family
+    private List<List<Factor>> families;
+    private List<Variable> variables;
+    private List<Factor> products;
+
+    @Setup
+    public void setup() {
+        BayesianNetwork bn = BenchmarkQueries.load(network);
+        families = new ArrayList<>();
+        variables = new ArrayList<>();
+        products = new ArrayList<>();
+        for (Variable v : bn.getVariables().values()) {
+            if (v.getChildren().isEmpty()) continue;
+            List<Factor> family = new ArrayList<>();
+            family.add(new Factor(v));
+            for (Variable child : v.getChildren()) {
+                family.add(new Factor(child));
+            }
+            families.add(family);
+            variables.add(v);
+            products.add(joinAll(family));
+        }
+    }
+
+    private static Factor joinAll(List<Factor> family) {
+        Factor result = family.get(0);
+        for (int i = 1; i < family.size(); i++) {
+            result = result.join(family.get(i), null);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void join(Blackhole bh) {
+        for (List<Factor> family : families) {
+            bh.consume(joinAll(family));
+        }
+    }
+
+    @Benchmark
+    public void eliminateVariable(Blackhole bh) {
+        for (int i = 0; i < products.size(); i++) {
+            bh.consume(products.get(i).EliminateVariable(variables.get(i)));
+        }
+    }
+}
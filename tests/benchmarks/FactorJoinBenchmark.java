@@ -0,0 +1,73 @@
+package tests.benchmarks;
+
+import src.BayesianNetwork;
+import src.Factor;
+import src.Variable;
+import src.XmlReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FactorJoinBenchmark
+ * A simple timing harness for Factor.join.
+ * For every variable in the network it joins the factor of the variable with the factors of all its children
+ * (the joins Variable Elimination does when it eliminates that variable) and reports the time per entry
+ * of the produced tables.
+ *
+ * Usage: java tests.benchmarks.FactorJoinBenchmark [network.xml] [rounds]
+ * the default network is tests/New_tests/big_net.xml
+ */
+public class FactorJoinBenchmark {
+
+    public static void main(String[] args) {
+        String network = args.length > 0 ? args[0] : "tests/New_tests/big_net.xml";
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, network);
+
+        // the families to join: a variable together with its children
+        List<List<Factor>> families = new ArrayList<>();
+        for (Variable v : bn.getVariables().values()) {
+            if (v.getChildren().isEmpty()) continue;
+            List<Factor> family = new ArrayList<>();
+            family.add(new Factor(v));
+            for (Variable child : v.getChildren()) {
+                family.add(new Factor(child));
+            }
+            families.add(family);
+        }
+
+        // warm up the JIT, then measure
+        run(families, rounds / 4);
+        long start = System.nanoTime();
+        long entries = run(families, rounds);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("network: " + network);
+        System.out.println("rounds: " + rounds + ", joined entries: " + entries);
+        System.out.printf("total: %.1f ms, %.2f ns per joined entry%n", elapsed / 1e6, (double) elapsed / entries);
+    }
+
+    /**
+     * join every family the given number of times
+     * @return the total number of entries in the produced tables
+     */
+    private static long run(List<List<Factor>> families, int rounds) {
+        long entries = 0;
+        double checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            for (List<Factor> family : families) {
+                Factor result = family.get(0);
+                for (int i = 1; i < family.size(); i++) {
+                    result = result.join(family.get(i), null);
+                    entries += result.size();
+                }
+                checksum += result.getValues()[0];
+            }
+        }
+        if (checksum == 42) System.out.println();
+        return entries;
+    }
+}
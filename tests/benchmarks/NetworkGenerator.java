@@ -0,0 +1,152 @@
+package tests.benchmarks;
+
+import src.BayesianNetwork;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * NetworkGenerator
+ * Generates random Bayesian Networks in the XML format of XmlReader, and query files for Ex1, for scale testing.
+ *
+ * The variables are X0, X1, ..., and the parents of every variable are chosen among the variables just before it:
+ * the parents of Xi are in X(i-treewidth) ... X(i-1). Every edge of the moral graph then connects two variables
+ * that are at most treewidth apart, so the treewidth of the network is at most the given treewidth
+ * (eliminating the variables in order never creates a clique larger than treewidth + 1).
+ * Every variable except X0 has between 1 and maxInDegree parents, so the network is connected.
+ * The tables are random, and every row sums to 1.
+ *
+ * Usage: java tests.benchmarks.NetworkGenerator output.xml nodes maxInDegree cardinality treewidth seed [queries.txt] [number of queries]
+ * for example: java tests.benchmarks.NetworkGenerator big.xml 10000 3 2 8 1 big_queries.txt 100
+ */
+public class NetworkGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 6) {
+            System.out.println("Usage: java tests.benchmarks.NetworkGenerator output.xml nodes maxInDegree cardinality treewidth seed [queries.txt] [number of queries]");
+            return;
+        }
+        String network = args[0];
+        int nodes = Integer.parseInt(args[1]);
+        int maxInDegree = Integer.parseInt(args[2]);
+        int cardinality = Integer.parseInt(args[3]);
+        int treewidth = Integer.parseInt(args[4]);
+        long seed = Long.parseLong(args[5]);
+        generate(network, nodes, maxInDegree, cardinality, treewidth, seed);
+        if (args.length > 6) {
+            int count = args.length > 7 ? Integer.parseInt(args[7]) : 100;
+            writeQueries(args[6], network, count, seed);
+        }
+    }
+
+    /**
+     * Generate a network and write it to a file
+     * @param file the name of the XML file
+     * @param nodes the number of variables
+     * @param maxInDegree the largest number of parents of a variable
+     * @param cardinality the number of outcomes of every variable
+     * @param treewidth the largest distance between a variable and its parents (a bound on the treewidth)
+     * @param seed the seed of the random network
+     */
+    public static void generate(String file, int nodes, int maxInDegree, int cardinality, int treewidth, long seed) throws IOException {
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            generate(out, nodes, maxInDegree, cardinality, treewidth, seed);
+        }
+    }
+
+    /**
+     * Generate a network (see above) and write it to a writer
+     */
+    public static void generate(Writer out, int nodes, int maxInDegree, int cardinality, int treewidth, long seed) throws IOException {
+        if (nodes < 1 || maxInDegree < 1 || cardinality < 2 || treewidth < 1) {
+            throw new IllegalArgumentException("nodes, maxInDegree and treewidth must be at least 1, and cardinality at least 2");
+        }
+        Random random = new Random(seed);
+        out.write("<NETWORK>\n");
+        for (int i = 0; i < nodes; i++) {
+            out.write("<VARIABLE>\n\t<NAME>X" + i + "</NAME>\n");
+            for (int k = 0; k < cardinality; k++) {
+                out.write("\t<OUTCOME>" + k + "</OUTCOME>\n");
+            }
+            out.write("</VARIABLE>\n\n");
+        }
+
+        StringBuilder table = new StringBuilder();
+        double[] row = new double[cardinality];
+        for (int i = 0; i < nodes; i++) {
+            // the parents: distinct variables among the previous treewidth variables
+            int window = Math.min(i, treewidth);
+            int degree = window == 0 ? 0 : 1 + random.nextInt(Math.min(maxInDegree, window));
+            List<Integer> candidates = new ArrayList<>();
+            for (int p = i - window; p < i; p++) {
+                candidates.add(p);
+            }
+            out.write("<DEFINITION>\n\t<FOR>X" + i + "</FOR>\n");
+            for (int d = 0; d < degree; d++) {
+                int parent = candidates.remove(random.nextInt(candidates.size()));
+                out.write("\t<GIVEN>X" + parent + "</GIVEN>\n");
+            }
+
+            // a random row for every combination of the outcomes of the parents
+            int rows = (int) Math.pow(cardinality, degree);
+            table.setLength(0);
+            for (int r = 0; r < rows; r++) {
+                randomRow(random, row);
+                for (double p : row) {
+                    if (table.length() > 0) table.append(' ');
+                    table.append(String.format(Locale.ROOT, "%.4f", p));
+                }
+            }
+            out.write("\t<TABLE>" + table + "</TABLE>\n</DEFINITION>\n\n");
+        }
+        out.write("</NETWORK>\n");
+    }
+
+    /**
+     * Fill a row of a table with random probabilities, rounded to 4 digits, that sum to 1
+     * every probability is at least 0.0001 so no outcome is impossible
+     */
+    private static void randomRow(Random random, double[] row) {
+        double sum = 0;
+        for (int k = 0; k < row.length; k++) {
+            row[k] = 0.05 + random.nextDouble();
+            sum += row[k];
+        }
+        double rounded = 0;
+        for (int k = 0; k < row.length - 1; k++) {
+            row[k] = Math.max(1, Math.round(row[k] / sum * 10000)) / 10000.0;
+            rounded += row[k];
+        }
+        row[row.length - 1] = Math.round((1 - rounded) * 10000) / 10000.0;
+    }
+
+    /**
+     * Write a query file for Ex1: the network on the first line, then Bayes Ball queries
+     * and Variable Elimination queries (with the AUTO order) over random variables
+     * @param file the name of the query file
+     * @param network the name of the XML file of the network
+     * @param count the number of queries of each kind
+     * @param seed the seed of the random queries
+     */
+    public static void writeQueries(String file, String network, int count, long seed) throws IOException {
+        BayesianNetwork bn = BenchmarkQueries.load(network);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file))) {
+            out.write(network);
+            out.newLine();
+            for (String query : BenchmarkQueries.bayesBallQueries(bn, count, seed)) {
+                out.write(query);
+                out.newLine();
+            }
+            for (String query : BenchmarkQueries.eliminationQueries(bn, count, seed)) {
+                out.write(query);
+                out.newLine();
+            }
+        }
+    }
+}
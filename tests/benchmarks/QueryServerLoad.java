@@ -0,0 +1,116 @@
+package tests.benchmarks;
+
+import src.BayesianNetwork;
+import src.Ex1;
+import src.QueryServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * QueryServerLoad
+ * Starts a QueryServer on a free port of localhost with the network of an input file of Ex1,
+ * sends the queries of the file over several connections, and checks every answer against Ex1.processQuery.
+ * Prints the throughput and the latency percentiles seen by the clients and by the server.
+ *
+ * Usage: java tests.benchmarks.QueryServerLoad input.txt [connections] [rounds]
+ * for example: java tests.benchmarks.QueryServerLoad tests/inputs/input2.txt 4 1000
+ */
+public class QueryServerLoad {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java tests.benchmarks.QueryServerLoad input.txt [connections] [rounds]");
+            return;
+        }
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        // the network and the queries of the input file
+        String network;
+        List<String> queries = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(args[0]))) {
+            network = br.readLine().trim();
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.trim().isEmpty()) queries.add(line.trim());
+            }
+        }
+
+        // the expected answers, from a network of its own
+        BayesianNetwork bn = BenchmarkQueries.load(network);
+        List<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(Ex1.processQuery(bn, query));
+        }
+
+        try (QueryServer server = new QueryServer(Ex1.ENGINE_VE)) {
+            server.load(network, false);
+            int port = server.listen(0);
+
+            ExecutorService clients = Executors.newFixedThreadPool(connections);
+            List<Future<long[]>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < connections; c++) {
+                results.add(clients.submit(() -> client(port, queries, expected, rounds)));
+            }
+            List<Long> latencies = new ArrayList<>();
+            for (Future<long[]> result : results) {
+                for (long latency : result.get()) latencies.add(latency);
+            }
+            long elapsed = System.nanoTime() - start;
+            clients.shutdown();
+
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            System.out.printf(Locale.ROOT, "clients: queries=%d throughput=%.1f/s p50=%.1fus p99=%.1fus max=%.1fus%n",
+                    sorted.length, sorted.length * 1e9 / elapsed, percentile(sorted, 50) / 1000.0,
+                    percentile(sorted, 99) / 1000.0, percentile(sorted, 100) / 1000.0);
+            System.out.println("server:  " + server.getStats());
+        }
+    }
+
+    /**
+     * Send the queries over one connection and check the answers
+     * @return the round trip time of every query in nanoseconds
+     */
+    private static long[] client(int port, List<String> queries, List<String> expected, int rounds) throws IOException {
+        long[] latencies = new long[queries.size() * rounds];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            int n = 0;
+            for (int r = 0; r < rounds; r++) {
+                for (int i = 0; i < queries.size(); i++) {
+                    long start = System.nanoTime();
+                    out.write(queries.get(i));
+                    out.newLine();
+                    out.flush();
+                    String answer = in.readLine();
+                    latencies[n++] = System.nanoTime() - start;
+                    if (!expected.get(i).equals(answer)) {
+                        throw new IllegalStateException("Wrong answer to " + queries.get(i) + ": " + answer + ", expected " + expected.get(i));
+                    }
+                }
+            }
+            out.write(QueryServer.QUIT);
+            out.newLine();
+            out.flush();
+        }
+        return latencies;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
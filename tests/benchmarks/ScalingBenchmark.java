@@ -0,0 +1,65 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import src.BayesBall;
+import src.BayesianNetwork;
+import src.VariableElimination;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScalingBenchmark
+ * JMH benchmarks of Bayes Ball and Variable Elimination on networks made by NetworkGenerator,
+ * to see how the time per query grows with the number of variables and the treewidth.
+ * every variable has 2 outcomes and at most 3 parents. the scores are per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScalingBenchmark {
+
+    private static final int QUERIES = 16;
+
+    @Param({"100", "1000", "10000"})
+    public int nodes;
+
+    @Param({"2", "5"})
+    public int treewidth;
+
+    private BayesianNetwork bn;
+    private List<String> bayesBallQueries;
+    private List<String> eliminationQueries;
+
+    @Setup
+    public void setup() throws IOException {
+        File network = File.createTempFile("generated_net", ".xml");
+        network.deleteOnExit();
+        NetworkGenerator.generate(network.getPath(), nodes, 3, 2, treewidth, 1);
+        bn = BenchmarkQueries.load(network.getPath());
+        bayesBallQueries = BenchmarkQueries.bayesBallQueries(bn, QUERIES, 1);
+        eliminationQueries = BenchmarkQueries.eliminationQueries(bn, QUERIES, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void processBayesBallQuery(Blackhole bh) {
+        for (String query : bayesBallQueries) {
+            bh.consume(BayesBall.processBayesBallQuery(bn, query));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void processVariableEliminationQuery(Blackhole bh) {
+        for (String query : eliminationQueries) {
+            bh.consume(VariableElimination.processVariableEliminationQuery(bn, query));
+        }
+    }
+}
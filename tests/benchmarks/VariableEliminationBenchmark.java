@@ -0,0 +1,51 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import src.BayesianNetwork;
+import src.VariableElimination;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VariableEliminationBenchmark
+ * JMH benchmark of VariableElimination.processVariableEliminationQuery on random queries of a network,
+ * from parsing the query to the answer.
+ * the plans of the queries are compiled in the warmup, like the repeated query shapes of a long run.
+ * the scores are per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableEliminationBenchmark {
+
+    private static final int QUERIES = 32;
+
+    @Param({"tests/NetworkFiles/alarm_net.xml", "tests/NetworkFiles/BallNet.xml", "tests/NetworkFiles/blueNet.xml",
+            "tests/NetworkFiles/net3.xml", "tests/NetworkFiles/net5.xml", "tests/NetworkFiles/net6.xml",
+            "tests/NetworkFiles/net7.xml", "tests/NetworkFiles/net8.xml", "tests/NetworkFiles/net9.xml",
+            "tests/NetworkFiles/net10.xml", "tests/NetworkFiles/tirgul2_net.xml", "tests/NetworkFiles/tirgul3_net.xml",
+            "tests/New_tests/big_net.xml"})
+    public String network;
+
+    private BayesianNetwork bn;
+    private List<String> queries;
+
+    @Setup
+    public void setup() {
+        bn = BenchmarkQueries.load(network);
+        queries = BenchmarkQueries.eliminationQueries(bn, QUERIES, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void processVariableEliminationQuery(Blackhole bh) {
+        for (String query : queries) {
+            bh.consume(VariableElimination.processVariableEliminationQuery(bn, query));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package tests.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import src.BayesianNetwork;
+import src.XmlReader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * XmlReaderBenchmark
+ * JMH benchmark of reading a network from its XML file with XmlReader.createBayesianNetwork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XmlReaderBenchmark {
+
+    @Param({"tests/NetworkFiles/alarm_net.xml", "tests/NetworkFiles/BallNet.xml", "tests/NetworkFiles/blueNet.xml",
+            "tests/NetworkFiles/net3.xml", "tests/NetworkFiles/net5.xml", "tests/NetworkFiles/net6.xml",
+            "tests/NetworkFiles/net7.xml", "tests/NetworkFiles/net8.xml", "tests/NetworkFiles/net9.xml",
+            "tests/NetworkFiles/net10.xml", "tests/NetworkFiles/tirgul_net.xml", "tests/NetworkFiles/tirgul2_net.xml",
+            "tests/NetworkFiles/tirgul3_net.xml", "tests/New_tests/big_net.xml"})
+    public String network;
+
+    @Benchmark
+    public BayesianNetwork createBayesianNetwork() {
+        BayesianNetwork bn = new BayesianNetwork();
+        XmlReader.createBayesianNetwork(bn, network);
+        return bn;
+    }
+}